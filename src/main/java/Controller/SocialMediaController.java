@@ -1,54 +1,254 @@
 package Controller;
 
+import DAO.AccountDAO;
 import Service.AccountService;
+import Service.MessageBroadcaster;
+import Service.MessageFeed;
+import Service.MessageIngestQueue;
+import Service.MessageSearchIndex;
 import Service.MessageService;
+import Service.TimelineCache;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.JsonCodec;
+import Util.MessageCursor;
+import Util.ReadThroughCache;
+import Util.ResponseCache;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.javalin.Javalin;
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.sse.SseClient;
+import io.javalin.websocket.WsConfig;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
- * found in readme.md as well as the test cases. You should
- * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
+ * The HTTP API described in readme.md: registration and login, creating, reading, updating and deleting messages,
+ * paginated and searchable message lists, live message streams over server-sent events and WebSocket, and /metrics.
+ * Handlers parse the request and call the static services; work that queries the database runs on the database
+ * executor, so Jetty's request threads are not held by JDBC, and list and message responses carry ETags and are cached
+ * as encoded bytes.
  */
 public class SocialMediaController {
+    private static final Logger LOG = LoggerFactory.getLogger(SocialMediaController.class);
     /**
-     * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
-     * suite must receive a Javalin object from this method.
+     * Default and maximum page size for the paginated list endpoints. Pagination is only applied when the request
+     * carries a limit or after query parameter; otherwise the full list is returned.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = Integer.getInteger("messages.page.maxLimit", 1000);
+    /**
+     * Response header carrying the opaque cursor of the next page. It is absent on the last page.
+     */
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /**
+     * Largest number of messages accepted by POST /messages/batch.
+     */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 1000);
+    /**
+     * Every request body and response goes through this codec's pre-bound readers and writers; it is also Javalin's
+     * JSON mapper. -Djson.blackbird=true switches property access to generated accessors.
+     */
+    private static final JsonCodec JSON = new JsonCodec(Boolean.getBoolean("json.blackbird"));
+
+    /**
+     * When true (the default, see the messages.streaming system property), unpaginated list responses are written to
+     * the response stream while the rows are read instead of being collected into a list first. The rows are read and
+     * written on the database executor's worker, which holds its connection for as long as the client takes to read
+     * what does not fit Jetty's output buffer; when false the rows are collected on the worker and the list is written
+     * from a request thread, freeing the worker first.
+     */
+    private final boolean streamLists = Boolean.parseBoolean(System.getProperty("messages.streaming", "true"));
+    /**
+     * Encoded single messages and list pages, served while their ETag is current so repeated reads skip Jackson.
+     */
+    private final ResponseCache responseCache = new ResponseCache(
+            Long.getLong("messages.responseCache.maxBytes", 8 * 1024 * 1024));
+    /**
+     * Jetty's request threads. With -Dserver.threads=virtual every request runs on its own virtual thread, so a
+     * handler blocked on JDBC or on a slow client does not hold one of server.maxThreads platform threads. That needs
+     * a JDK with virtual threads (21, see the jdk21 profile); elsewhere the platform pool is kept.
+     */
+    private final QueuedThreadPool threadPool = createThreadPool();
+    /**
+     * Runs every handler's DAO calls, so a slow query holds one of these workers rather than a Jetty thread. Sized by
+     * db.executor.threads (default db.pool.maxSize, one worker per connection) and db.executor.queueCapacity; a full
+     * queue answers 503.
+     */
+    private final DatabaseExecutor dbExecutor = new DatabaseExecutor(
+            Integer.getInteger("db.executor.threads", Integer.getInteger("db.pool.maxSize", 10)),
+            Integer.getInteger("db.executor.queueCapacity", 1000));
+    /**
+     * Subscribers of GET /messages/live, over Server-Sent Events or a WebSocket, told about every message written
+     * through MessageService.
+     */
+    private final MessageBroadcaster broadcaster = new MessageBroadcaster(
+            message -> JSON.toJsonString(message, Message.class),
+            Integer.getInteger("messages.live.bufferSize", 256),
+            Integer.getInteger("messages.live.senderThreads", 16),
+            Long.getLong("messages.live.writeTimeoutMillis", 10000),
+            Long.getLong("messages.live.heartbeatMillis", 15000));
+    /**
+     * WebSocket subscriptions by session id, to be cancelled when the session closes.
+     */
+    private final ConcurrentHashMap<String, MessageBroadcaster.Subscription> liveSockets = new ConcurrentHashMap<>();
+
+    /**
+     * The services keep their DAOs in static fields, so constructing them here wires up the layers for this app.
+     */
+    public SocialMediaController() {
+        new AccountService(new AccountDAO(), dbExecutor);
+        new MessageService(broadcaster);
+    }
+
+    /**
+     * Registers the endpoints and exception mappers on a new app running on this controller's thread pool, with
+     * response compression. The caller starts it; stopping it shuts down the database executor and the broadcaster.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/Account", this::registerAccountHandler);
-        app.post("/Account/{account_id}", this::userLoginHandler);
-        app.post("/Message", this::newMsgHandler);
-        app.get("/Message", this::getAllMsgHandler);
-        app.get("/Message/{message_id}", this::getMsgByMsgIdHandler);
-        app.delete("/Message", this::deleteByMsgIdHandler);
-        app.patch("/Message/{message_id}", this::updateByMsgIdHandler);
-        app.get("/Message/{posted_by}", this:: getAllMsgByAcctIdHandler);
+        CompressionStrategy compression = createCompressionStrategy();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JSON);
+            config.jetty.server(() -> new Server(threadPool));
+            config.compression.custom(compression);
+        });
+        if (compression != CompressionStrategy.NONE) {
+            // any response over the minimum size may be compressed, so caches must key every one on Accept-Encoding
+            app.before(context -> context.header(Header.VARY, Header.ACCEPT_ENCODING));
+        }
+        app.events(event -> event.serverStopped(() -> {
+            dbExecutor.shutdown();
+            broadcaster.shutdown();
+        }));
+        app.post("/register", this::registerAccountHandler);
+        app.post("/login", this::userLoginHandler);
+        app.post("/messages", this::newMsgHandler);
+        app.post("/messages/batch", this::newMsgBatchHandler);
+        app.get("/messages", this::getAllMsgHandler);
+        // registered before /messages/{message_id} so "search" is not taken for an id
+        app.get("/messages/search", this::searchMsgHandler);
+        app.sse("/messages/live", this::liveSseHandler);
+        app.ws("/messages/live", this::liveWsHandler);
+        app.get("/messages/{message_id}", this::getMsgByMsgIdHandler);
+        app.delete("/messages/{message_id}", this::deleteByMsgIdHandler);
+        app.patch("/messages/{message_id}", this::updateByMsgIdHandler);
+        app.get("/accounts/{account_id}/messages", this:: getAllMsgByAcctIdHandler);
+        app.get("/metrics", this::metricsHandler);
+        // the services reject invalid input with IllegalArgumentException, which is a client error
+        app.exception(IllegalArgumentException.class, (e, context) -> context.status(400));
+        // the message ingest queue or a worker pool stayed full: ask the client to retry later
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(503));
 
         return app;
     }
 
-    private void registerAccountHandler(Context context) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            Account account = mapper.readValue(context.body(), Account.class);
-            Account registerAccount = AccountService.registerAccount(account);
-
-            if (registerAccount == null) {
-                context.status(400);
+    private static QueuedThreadPool createThreadPool() {
+        // the same sizes as Javalin's default pool
+        QueuedThreadPool pool = new QueuedThreadPool(Integer.getInteger("server.maxThreads", 250), 8, 60000);
+        pool.setName("JettyServerThreadPool");
+        if ("virtual".equals(System.getProperty("server.threads", "platform"))) {
+            if (VirtualThreads.areSupported()) {
+                pool.setUseVirtualThreads(true);
             } else {
-                context.status(200); // rather 201
-                context.json(registerAccount);
+                LOG.warn("server.threads=virtual, but this JDK does not support virtual threads;"
+                        + " using platform threads");
             }
+        }
+        return pool;
+    }
+
+    /**
+     * Brotli and gzip for responses of at least server.compression.minSize bytes, picked from the request's
+     * Accept-Encoding with brotli first. The message lists repeat the same keys in every element and shrink several
+     * times over; single messages are too small to be worth the CPU. The levels bound the CPU spent per byte: on the
+     * message list gzip 9 is under 3% smaller than gzip 6, and brotli 11 is over a hundred times slower than brotli 4
+     * without being smaller. Without the native brotli library Javalin logs a warning and falls back to gzip.
+     */
+    private static CompressionStrategy createCompressionStrategy() {
+        String mode = System.getProperty("server.compression", "brotliAndGzip");
+        Brotli brotli = new Brotli(Integer.getInteger("server.compression.brotliLevel", 4));
+        Gzip gzip = new Gzip(Integer.getInteger("server.compression.gzipLevel", 6));
+        CompressionStrategy strategy;
+        switch (mode) {
+            case "brotliAndGzip":
+                strategy = new CompressionStrategy(brotli, gzip);
+                break;
+            case "gzip":
+                strategy = new CompressionStrategy(null, gzip);
+                break;
+            case "none":
+                return CompressionStrategy.NONE;
+            default:
+                throw new IllegalArgumentException("server.compression must be brotliAndGzip, gzip or none: " + mode);
+        }
+        strategy.setMinSizeForCompression(Integer.getInteger("server.compression.minSize", 1500));
+        return strategy;
+    }
+
+    /**
+     * Hands the work to the database executor and releases the request thread; Javalin writes the response once the
+     * work is done, and maps anything it throws like a synchronous handler's exception.
+     */
+    private void onDatabase(Context context, Runnable work) {
+        context.future(() -> dbExecutor.run(work));
+    }
+
+    /**
+     * Reads on the database executor, then sets the response on one of Jetty's threads. Javalin writes the body on
+     * the thread that completes the future, so the worker is free again before a slow client reads a large list.
+     */
+    private <T> void fromDatabase(Context context, Supplier<T> read, Consumer<T> send) {
+        context.future(() -> dbExecutor.supply(read).thenAcceptAsync(send, threadPool));
+    }
+
+    private void registerAccountHandler(Context context) {
+        try {
+            Account account = JSON.readAccount(context.bodyAsBytes());
+            // the password is hashed on the hashing pool and the account inserted on the database executor, where the
+            // unique constraint checks the username; the request thread is released until both are done
+            context.future(() -> AccountService.registerAccount(account).thenAccept(registerAccount -> {
+                if (registerAccount == null) {
+                    context.status(400);
+                } else {
+                    context.status(200); // rather 201
+                    context.json(registerAccount);
+                }
+            }));
         } catch (IOException e) {
             e.printStackTrace();
             context.status(400);
@@ -57,85 +257,278 @@ public class SocialMediaController {
 
     private void userLoginHandler(Context context) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Account account = mapper.readValue(context.body(), Account.class);
+            Account account = JSON.readAccount(context.bodyAsBytes());
 
             String username = account.getUsername();
             String password = account.getPassword();
 
-            Account retrievedAccount = AccountService.userLogin(username, password);
-    
-            if (retrievedAccount == null) {
-                context.status(401); // Unauthorized
-                context.result("Invalid credentials");
-            } else {
-                context.status(200);
-                context.json(retrievedAccount);
-            }
+            // the account is read on the database executor, the password verified on the hashing pool, and a rehash
+            // saved back on the database executor
+            context.future(() -> dbExecutor.supply(() -> AccountService.userLogin(username, password))
+                    .thenCompose(login -> login)
+                    .thenAccept(retrievedAccount -> {
+                        if (retrievedAccount == null) {
+                            context.status(401); // Unauthorized
+                        } else {
+                            context.status(200);
+                            context.json(retrievedAccount);
+                        }
+                    }));
         } catch (IOException e) {
             e.printStackTrace();
             context.status(400);
-            context.result("Bad request");
         }
     }
 
     private void newMsgHandler(Context context) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Message message = mapper.readValue(context.body(), Message.class);
-            Message newMessage = MessageService.newMessage(message);
-            if (newMessage == null){
+            Message message = JSON.readMessage(context.bodyAsBytes());
+            // a worker validates and inserts or queues the message; in queue mode it is released before the group
+            // commit, so a group can take more messages than there are workers
+            context.future(() -> dbExecutor.supply(() -> MessageService.newMessageAsync(message))
+                    .thenCompose(saved -> saved)
+                    .thenAccept(newMessage -> {
+                        if (newMessage == null) {
+                            context.status(400);
+                        } else {
+                            context.status(200); // try 201
+                            context.json(newMessage);
+                        }
+                    }));
+        } catch (IOException e) {
+            e.printStackTrace();
+            context.status(400);
+        }
+    }
+
+    /**
+     * Saves an array of messages at once. The response holds one result per message, in request order. With
+     * ?atomic=true nothing is saved unless every message is, and any failure answers 400.
+     */
+    private void newMsgBatchHandler(Context context) {
+        try {
+            List<Message> messages = JSON.readMessages(context.bodyAsBytes());
+            if (messages == null || messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
                 context.status(400);
-            } else {
-                context.status(200); // try 201
-                context.json(newMessage);
+                return;
             }
+            boolean allOrNothing = Boolean.parseBoolean(context.queryParam("atomic"));
+            onDatabase(context, () -> {
+                List<MessageBatchResult> results = MessageService.newMessages(messages, allOrNothing);
+                boolean anyFailed = results.stream().anyMatch(result -> result.getError() != null);
+                context.status(allOrNothing && anyFailed ? 400 : 200);
+                context.json(results);
+            });
         } catch (IOException e) {
             e.printStackTrace();
             context.status(400);
         }
     }
 
-    private void getAllMsgHandler(Context context) { //not using context?
-        List<Message> messages = MessageService.getAllMessages();
-        context.json(messages);
+    private void getAllMsgHandler(Context context) {
+        String etag = MessageService.getListETag();
+        if (notModified(context, etag, true)) {
+            return;
+        }
+        if (isPageRequest(context)) {
+            String key = context.path() + "?" + context.queryString();
+            if (sendCached(context, key, etag)) {
+                return;
+            }
+            int limit = pageLimit(context);
+            MessageCursor cursor = pageCursor(context);
+            onDatabase(context, () -> {
+                List<Message> page = MessageService.getMessagesPage(cursor, limit + 1);
+                sendAndCache(context, key, etag, trimPage(context, page, limit));
+            });
+            return;
+        }
+        if (streamLists) {
+            onDatabase(context, () -> streamJsonArray(context, MessageService::forEachMessage));
+            return;
+        }
+        fromDatabase(context, MessageService::getAllMessages, context::json);
+    }
+
+    /**
+     * GET /messages/search?q=...&limit=... answers the newest messages containing every term of q, newest first.
+     */
+    private void searchMsgHandler(Context context) {
+        String query = context.queryParam("q");
+        if (query == null) {
+            throw new IllegalArgumentException("q is required");
+        }
+        String etag = MessageService.getListETag();
+        if (notModified(context, etag, true)) {
+            return;
+        }
+        String key = context.path() + "?" + context.queryString();
+        if (sendCached(context, key, etag)) {
+            return;
+        }
+        int limit = pageLimit(context);
+        // the index is in memory, but each match is read through the message cache
+        onDatabase(context, () -> sendAndCache(context, key, etag, MessageService.searchMessages(query, limit)));
+    }
+
+    /**
+     * GET /messages/live?posted_by=... with Accept: text/event-stream streams a created, updated or deleted event with
+     * the message as its data for every write, optionally only for one account's messages. Heartbeats are comments.
+     *
+     * SseClient only writes blocking, and the servlet's non-blocking output cannot be used either: Javalin runs this
+     * handler on its async pool, sometimes before the request has been put in async mode, when setWriteListener
+     * throws. So events go to Jetty's HttpChannel, the same non-blocking write HttpOutput uses underneath, which
+     * completes a callback instead of blocking the sender. Javalin has already flushed the headers, and the
+     * broadcaster keeps one write in flight and calls close() only after the last one completed. So
+     * client.close() then ends the response through HttpOutput on the same channel without overlapping a write.
+     * abort() is only called with a write stuck, and abandons the response instead.
+     */
+    private void liveSseHandler(SseClient client) {
+        Integer posted_by = postedByParam(client.ctx.queryParam("posted_by"));
+        HttpChannel channel = Request.getBaseRequest(client.ctx.req()).getHttpChannel();
+        MessageBroadcaster.Subscription subscription = broadcaster.subscribe(posted_by,
+                new MessageBroadcaster.Connection() {
+            @Override
+            public CompletableFuture<Void> send(String type, String json) {
+                return write("event: " + type + "\ndata: " + json + "\n\n");
+            }
+
+            @Override
+            public CompletableFuture<Void> heartbeat() {
+                return write(": heartbeat\n\n");
+            }
+
+            private CompletableFuture<Void> write(String chunk) {
+                CompletableFuture<Void> written = new CompletableFuture<>();
+                channel.write(ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8)), false, Callback.from(written));
+                return written;
+            }
+
+            @Override
+            public void close() {
+                client.close();
+            }
+
+            @Override
+            public void abort() {
+                channel.abort(new TimeoutException("Live subscriber stopped reading"));
+            }
+        });
+        client.onClose(subscription::cancel);
+        client.keepAlive();
+    }
+
+    /**
+     * The same events over a WebSocket at /messages/live?posted_by=..., as {"type":...,"message":{...}} text frames.
+     * Heartbeats are pings.
+     */
+    private void liveWsHandler(WsConfig ws) {
+        ws.onConnect(context -> {
+            Integer posted_by = postedByParam(context.queryParam("posted_by"));
+            liveSockets.put(context.getSessionId(), broadcaster.subscribe(posted_by,
+                    new MessageBroadcaster.Connection() {
+                @Override
+                public CompletableFuture<Void> send(String type, String json) {
+                    CompletableFuture<Void> written = new CompletableFuture<>();
+                    context.session.getRemote().sendString("{\"type\":\"" + type + "\",\"message\":" + json + "}",
+                            writeCallback(written));
+                    return written;
+                }
+
+                @Override
+                public CompletableFuture<Void> heartbeat() {
+                    CompletableFuture<Void> written = new CompletableFuture<>();
+                    context.session.getRemote().sendPing(ByteBuffer.allocate(0), writeCallback(written));
+                    return written;
+                }
+
+                @Override
+                public void close() {
+                    context.closeSession(StatusCode.POLICY_VIOLATION, "too far behind");
+                }
+
+                @Override
+                public void abort() {
+                    context.session.disconnect();
+                }
+            }));
+        });
+        ws.onClose(context -> cancelLiveSocket(context.getSessionId()));
+        ws.onError(context -> cancelLiveSocket(context.getSessionId()));
+    }
+
+    private void cancelLiveSocket(String sessionId) {
+        MessageBroadcaster.Subscription subscription = liveSockets.remove(sessionId);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private static WriteCallback writeCallback(CompletableFuture<Void> written) {
+        return new WriteCallback() {
+            @Override
+            public void writeSuccess() {
+                written.complete(null);
+            }
+
+            @Override
+            public void writeFailed(Throwable failure) {
+                written.completeExceptionally(failure);
+            }
+        };
+    }
+
+    private static Integer postedByParam(String posted_by) {
+        return posted_by == null || posted_by.isEmpty() ? null : Integer.valueOf(posted_by);
     }
 
     private void getMsgByMsgIdHandler(Context context) {
         int messageId = Integer.parseInt(context.pathParam("message_id"));
-        Message messages = MessageService.getMessageByMessageId(messageId);
-        if (messages == null) {
-            context.status(200); // try 204 (no content)
-        } else {
-            context.json(messages);
-            context.status(200);
-
+        String etag = MessageService.getMessageETag(messageId);
+        // a missing message has no current representation, so * is only matched once the message is found
+        if (notModified(context, etag, false) || sendCached(context, context.path(), etag)) {
+            return;
         }
+        onDatabase(context, () -> {
+            Message messages = MessageService.getMessageByMessageId(messageId);
+            if (messages == null) {
+                context.status(200); // try 204 (no content)
+            } else if (notModified(context, etag, true)) {
+                return;
+            } else {
+                sendAndCache(context, context.path(), etag, messages);
+                context.status(200);
+
+            }
+        });
     }
 
     private void deleteByMsgIdHandler(Context context) {
         int message_id = Integer.parseInt(context.pathParam("message_id"));
-        Message isDeleted = MessageService.deleteByMessageId(message_id);
-        if (isDeleted == null) {
-            context.status(200); // try 204
-        } else {
-            context.status(200);
-            context.json(isDeleted);
-        }
+        onDatabase(context, () -> {
+            Message isDeleted = MessageService.deleteByMessageId(message_id);
+            if (isDeleted == null) {
+                context.status(200); // try 204
+            } else {
+                context.status(200);
+                context.json(isDeleted);
+            }
+        });
     }
 
     private void updateByMsgIdHandler(Context context) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Message message = mapper.readValue(context.body(), Message.class);
+            Message message = JSON.readMessage(context.bodyAsBytes());
             int message_id = Integer.parseInt(context.pathParam("message_id"));
-            Message updatedMessage = MessageService.updateByMessageId(message, message_id);
-            if(updatedMessage == null){
-                context.status(400); // try 404
-            }else{
-                context.status(200);
-                context.json(updatedMessage);
-            }
+            onDatabase(context, () -> {
+                Message updatedMessage = MessageService.updateByMessageId(message, message_id);
+                if(updatedMessage == null){
+                    context.status(400); // try 404
+                }else{
+                    context.status(200);
+                    context.json(updatedMessage);
+                }
+            });
         } catch (IOException e) {
             context.status(400);
             e.printStackTrace();
@@ -144,11 +537,261 @@ public class SocialMediaController {
 
     private void getAllMsgByAcctIdHandler(Context context) {
         int accountId = Integer.parseInt(context.pathParam("account_id"));
-        List<Message> messages = MessageService.getAllMessagesByAccountId(accountId);
-        if (messages.isEmpty()) {
-            context.status(200); // try 204
-        } else {
-            context.json(messages);
+        String etag = MessageService.getListETag();
+        if (notModified(context, etag, true)) {
+            return;
+        }
+        if (isPageRequest(context) || context.queryParam("since") != null || context.queryParam("until") != null) {
+            String key = context.path() + "?" + context.queryString();
+            if (sendCached(context, key, etag)) {
+                return;
+            }
+            int limit = pageLimit(context);
+            MessageCursor cursor = pageCursor(context);
+            Long since = epochParam(context, "since");
+            Long until = epochParam(context, "until");
+            onDatabase(context, () -> {
+                List<Message> page = MessageService.getTimeline(accountId, cursor, since, until, limit + 1);
+                sendAndCache(context, key, etag, trimPage(context, page, limit));
+            });
+            return;
+        }
+        if (streamLists) {
+            onDatabase(context, () -> streamJsonArray(context,
+                    consumer -> MessageService.forEachMessageByAccountId(accountId, consumer)));
+            return;
+        }
+        fromDatabase(context, () -> MessageService.getAllMessagesByAccountId(accountId), context::json);
+    }
+
+    /**
+     * Sets the response's ETag and, when the request's If-None-Match already names it, answers 304 with no body. The
+     * tag is sent weak: it versions the messages, while the bytes differ with the compression Accept-Encoding picked,
+     * and a strong tag would claim they are identical.
+     * @param exists whether the resource has a current representation; If-None-Match: * matches only one that does
+     * @return true if the response is complete and the handler must not read or write anything else
+     */
+    private static boolean notModified(Context context, String etag, boolean exists) {
+        context.header(Header.ETAG, "W/" + etag);
+        String ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // If-None-Match uses the weak comparison, which ignores the W/ prefix
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || exists && tag.equals("*")) {
+                context.status(304);
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Sends the body cached for the key if it was encoded under the current ETag.
+     * @return true if the response is complete
+     */
+    private boolean sendCached(Context context, String key, String etag) {
+        ResponseCache.Entry cached = responseCache.get(key, etag);
+        if (cached == null) {
+            return false;
+        }
+        // only a current representation is cached, so a wildcard the caller could not match yet matches it
+        if (notModified(context, etag, true)) {
+            return true;
+        }
+        if (cached.getNextCursor() != null) {
+            context.header(NEXT_CURSOR_HEADER, cached.getNextCursor());
+        }
+        context.contentType(ContentType.APPLICATION_JSON);
+        context.result(cached.getBody());
+        return true;
+    }
+
+    /**
+     * Encodes the value once, sends it and caches the bytes with the ETag that was current before the value was read.
+     */
+    private void sendAndCache(Context context, String key, String etag, Object value) {
+        try {
+            byte[] body = JSON.writeBytes(value);
+            responseCache.put(key, etag, body, context.res().getHeader(NEXT_CURSOR_HEADER));
+            context.contentType(ContentType.APPLICATION_JSON);
+            context.result(body);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            context.status(500);
+        }
+    }
+
+    /**
+     * Reads messages into a consumer.
+     */
+    private interface MessageSource {
+        /**
+         * @return false if reading failed part way, after some messages may have been handed over
+         */
+        boolean forEach(Consumer<Message> consumer);
+    }
+
+    /**
+     * Writes a JSON array straight to the response output stream, one element per message handed over by the source.
+     * No Content-Length is known up front, so Jetty sends the response chunked. Once the first bytes are out the
+     * status can no longer change, so if the source fails part way the connection is aborted without closing the
+     * array or the chunked body, and the client sees a broken response rather than a short list.
+     */
+    private void streamJsonArray(Context context, MessageSource source) {
+        context.contentType("application/json");
+        boolean complete;
+        try {
+            JsonGenerator generator = JSON.getFactory().createGenerator(context.outputStream());
+            // closing the generator must not finish the array of a failed read
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartArray();
+            complete = source.forEach(message -> {
+                try {
+                    JSON.writerFor(message).writeValue(generator, message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (complete) {
+                generator.writeEndArray();
+                generator.close();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // the client went away
+            e.printStackTrace();
+            return;
+        }
+        if (!complete) {
+            Request.getBaseRequest(context.req()).getHttpChannel()
+                    .abort(new IllegalStateException("Reading the messages failed part way through"));
+        }
+    }
+
+    private boolean isPageRequest(Context context) {
+        return context.queryParam("limit") != null || context.queryParam("after") != null;
+    }
+
+    private int pageLimit(Context context) {
+        String limit = context.queryParam("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        int parsed = Integer.parseInt(limit);
+        if (parsed < 1 || parsed > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return parsed;
+    }
+
+    private Long epochParam(Context context, String name) {
+        String value = context.queryParam(name);
+        return value == null || value.isEmpty() ? null : Long.valueOf(value);
+    }
+
+    private MessageCursor pageCursor(Context context) {
+        String after = context.queryParam("after");
+        return after == null || after.isEmpty() ? null : MessageCursor.decode(after);
+    }
+
+    /**
+     * The page queries fetch one row more than requested; if it came back there is a next page, so the extra row is
+     * dropped and the cursor of the last returned message is sent in the X-Next-Cursor header.
+     */
+    private List<Message> trimPage(Context context, List<Message> page, int limit) {
+        if (page.size() <= limit) {
+            return page;
+        }
+        List<Message> trimmed = page.subList(0, limit);
+        context.header(NEXT_CURSOR_HEADER, MessageCursor.of(trimmed.get(limit - 1)).encode());
+        return trimmed;
+    }
+
+    /**
+     * Reports connection pool and cache counters so their behavior can be checked under load.
+     */
+    private void metricsHandler(Context context) {
+        try {
+            ConnectionPool pool = ConnectionUtil.getPool();
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("pool.active", pool.getActiveCount());
+            metrics.put("pool.idle", pool.getIdleCount());
+            metrics.put("pool.waiting", pool.getWaitingCount());
+            metrics.put("pool.maxSize", pool.getMaxSize());
+            metrics.put("pool.borrows", pool.getBorrowCount());
+            metrics.put("pool.timeouts", pool.getTimeoutCount());
+            metrics.put("pool.leaks", pool.getLeakCount());
+            metrics.put("statementCache.hits", pool.getStatementCacheHits());
+            metrics.put("statementCache.misses", pool.getStatementCacheMisses());
+            metrics.put("statementCache.evictions", pool.getStatementCacheEvictions());
+            metrics.put("server.virtualThreads", threadPool.isUseVirtualThreads());
+            metrics.put("server.threads", threadPool.getThreads());
+            metrics.put("server.busyThreads", threadPool.getBusyThreads());
+            metrics.put("server.queuedJobs", threadPool.getQueueSize());
+            metrics.put("dbExecutor.threads", dbExecutor.getThreads());
+            metrics.put("dbExecutor.active", dbExecutor.getActiveCount());
+            metrics.put("dbExecutor.queueDepth", dbExecutor.getQueueDepth());
+            metrics.put("dbExecutor.completed", dbExecutor.getCompletedCount());
+            metrics.put("dbExecutor.rejected", dbExecutor.getRejectedCount());
+            metrics.put("dbExecutor.averageWaitMicros", dbExecutor.getAverageWaitMicros());
+            metrics.put("dbExecutor.maxWaitMicros", dbExecutor.getMaxWaitMicros());
+            metrics.put("dbExecutor.averageRunMicros", dbExecutor.getAverageRunMicros());
+            metrics.put("ingestQueue.depth", MessageService.getIngestQueueDepth());
+            MessageIngestQueue ingestQueue = MessageService.getIngestQueue();
+            if (ingestQueue != null) {
+                metrics.put("ingestQueue.groups", ingestQueue.getGroupCount());
+                metrics.put("ingestQueue.largestGroup", ingestQueue.getLargestGroup());
+            }
+            MessageFeed feed = MessageService.getFeed();
+            if (feed != null) {
+                metrics.put("feed.messages", feed.size());
+                metrics.put("feed.ageMillis", feed.getAgeMillis());
+            }
+            metrics.put("live.subscribers", broadcaster.getSubscriberCount());
+            metrics.put("live.published", broadcaster.getPublishedCount());
+            metrics.put("live.delivered", broadcaster.getDeliveredCount());
+            metrics.put("live.evicted", broadcaster.getEvictedCount());
+            MessageSearchIndex searchIndex = MessageService.getSearchIndex();
+            metrics.put("searchIndex.messages", searchIndex.getDocumentCount());
+            metrics.put("searchIndex.terms", searchIndex.getTermCount());
+            metrics.put("searchIndex.postingBytes", searchIndex.getPostingBytes());
+            putCacheMetrics(metrics, "messageCache", MessageService.getMessageCache());
+            putCacheMetrics(metrics, "accountCache", AccountService.getAccountCache());
+            metrics.put("responseCache.entries", responseCache.size());
+            metrics.put("responseCache.bytes", responseCache.getBytes());
+            metrics.put("responseCache.hits", responseCache.getHitCount());
+            metrics.put("responseCache.misses", responseCache.getMissCount());
+            metrics.put("responseCache.evictions", responseCache.getEvictionCount());
+            metrics.put("passwordHasher.iterations", AccountService.getPasswordHasher().getIterations());
+            metrics.put("passwordHasher.queueDepth", AccountService.getPasswordHasher().getQueueDepth());
+            putCacheMetrics(metrics, "verifiedLogins", AccountService.getVerifiedLogins());
+            TimelineCache timelineCache = MessageService.getTimelineCache();
+            metrics.put("timelineCache.accounts", timelineCache.size());
+            metrics.put("timelineCache.estimatedBytes", timelineCache.getEstimatedBytes());
+            metrics.put("timelineCache.hits", timelineCache.getHitCount());
+            metrics.put("timelineCache.misses", timelineCache.getMissCount());
+            metrics.put("timelineCache.evictions", timelineCache.getEvictionCount());
+            context.json(metrics);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            context.status(500);
+        }
+    }
+
+    private static void putCacheMetrics(Map<String, Object> metrics, String name, ReadThroughCache<?, ?> cache) {
+        metrics.put(name + ".size", cache.size());
+        metrics.put(name + ".hits", cache.getHitCount());
+        metrics.put(name + ".negativeHits", cache.getNegativeHitCount());
+        metrics.put(name + ".misses", cache.getMissCount());
+        metrics.put(name + ".coalesced", cache.getCoalescedCount());
+        metrics.put(name + ".hitRatio", cache.getHitRatio());
+        metrics.put(name + ".evictions", cache.getEvictionCount());
+        metrics.put(name + ".loads", cache.getLoadCount());
+        metrics.put(name + ".averageLoadMicros", cache.getAverageLoadMicros());
     }
 }
\ No newline at end of file
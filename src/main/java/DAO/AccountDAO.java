@@ -2,46 +2,141 @@ package DAO;
 
 import Model.Account;
 import java.sql.*;
+import java.util.function.Consumer;
 import Util.ConnectionUtil;
 
 public class AccountDAO {
 
-    public Account registerAccount(Account account) {  
-        Connection connection = ConnectionUtil.getConnection();
+    /**
+     * SQLState H2 (and the SQL standard) report for a unique constraint violation.
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * Inserts the account in one statement and relies on the unique constraint on username to reject duplicates, so
+     * two concurrent registrations of the same name cannot both succeed.
+     * @return the account with its generated account_id, or null if the username is taken or the insert failed
+     */
+    public Account registerAccount(Account account) {
+        Connection connection = null;
         Account registeredAccount = null;
         try {
+            connection = ConnectionUtil.getConnection();
             String SQL ="INSERT INTO account(username, password) VALUES(?,?);";
-            PreparedStatement ps = connection.prepareStatement(SQL);
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SQL, Statement.RETURN_GENERATED_KEYS);
             ps.setString(1, account.getUsername());
             ps.setString(2, account.getPassword());
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected > 0) {
-                registeredAccount = account; 
-            }  
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    registeredAccount = new Account(rs.getInt(1), account.getUsername(), account.getPassword());
+                }
+            }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return registeredAccount;
     }
 
+    /**
+     * @return the account, or null if no account has this username
+     * @throws IllegalStateException if the query failed, so a database error is not taken for an unknown username
+     */
     public Account getAccountByUsername(String username) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         try {
+            connection = ConnectionUtil.getConnection();
             String SQL = "SELECT * FROM account WHERE username = ?;";
-            PreparedStatement ps = connection.prepareStatement(SQL);
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SQL);
             ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Account account = new Account(
-                    rs.getInt("account_id"), 
-                    rs.getString("username"), 
-                    rs.getString("password")
-                );
-                return account;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Account account = new Account(
+                        rs.getInt("account_id"),
+                        rs.getString("username"),
+                        rs.getString("password")
+                    );
+                    return account;
+                }
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        } 
+            throw new IllegalStateException("Could not read account " + username, e);
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return true if an account with this id exists
+     * @throws IllegalStateException if the query failed, so a database error is not taken for an unknown account
+     */
+    public boolean accountExists(int account_id) {
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            String SQL = "SELECT account_id FROM account WHERE account_id = ?;";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SQL);
+            ps.setInt(1, account_id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read account " + account_id, e);
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Replaces the stored password only if it is still the expected value, so two logins rehashing the same legacy
+     * password at once cannot overwrite each other's result with a stale one.
+     * @return true if the password was replaced
+     */
+    public boolean updatePassword(int account_id, String expectedPassword, String newPassword) {
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            String SQL = "UPDATE account SET password = ? WHERE account_id = ? AND password = ?;";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SQL);
+            ps.setString(1, newPassword);
+            ps.setInt(2, account_id);
+            ps.setString(3, expectedPassword);
+            return ps.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return false;
+    }
+
+    /**
+     * Hands the account_id and username of every account to the consumer, for building in-memory indexes at startup.
+     * The password is left null.
+     * @return false if the query failed, possibly after some accounts were handed over
+     */
+    public boolean forEachAccount(Consumer<Account> consumer) {
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            String SQL = "SELECT account_id, username FROM account;";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SQL);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(new Account(rs.getInt(1), rs.getString(2), null));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return false;
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+}
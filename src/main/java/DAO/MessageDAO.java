@@ -2,136 +2,392 @@ package DAO;
 
 import Model.Message;
 import java.util.*;
+import java.util.function.Consumer;
 import java.sql.*;
 import Util.ConnectionUtil;
+import Util.MessageCursor;
 
-public class MessageDAO { 
+public class MessageDAO {
 
     public Message saveNewMessage(Message message){
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         try {
+            connection = ConnectionUtil.getConnection();
             String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?);" ;
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
- 
-            ps.setInt(1, message.getPosted_by()); 
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql, Statement.RETURN_GENERATED_KEYS);
+
+            ps.setInt(1, message.getPosted_by());
             ps.setString(2, message.getMessage_text());
             ps.setLong(3, message.getTime_posted_epoch());
 
             ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if(rs.next()){
-                int generated_message_id = (int) rs.getInt(1);
-                return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if(rs.next()){
+                    int generated_message_id = (int) rs.getInt(1);
+                    return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return null;
     }
 
+    /**
+     * Inserts the messages with one JDBC batch in a single transaction.
+     * @param allOrNothing if true, any failing row rolls back the whole batch; otherwise the rows that succeeded are
+     * committed
+     * @return the generated message_id of each message in the order given, or null for each message that was not saved
+     */
+    public List<Integer> saveNewMessages(List<Message> messages, boolean allOrNothing) {
+        List<Integer> ids = new ArrayList<>(Collections.nCopies(messages.size(), null));
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            connection.setAutoCommit(false);
+            String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?);" ;
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql, Statement.RETURN_GENERATED_KEYS);
+            for (Message message : messages) {
+                ps.setInt(1, message.getPosted_by());
+                ps.setString(2, message.getMessage_text());
+                ps.setLong(3, message.getTime_posted_epoch());
+                ps.addBatch();
+            }
+
+            int[] updateCounts;
+            try {
+                updateCounts = ps.executeBatch();
+            } catch (BatchUpdateException e) {
+                System.out.println(e.getMessage());
+                if (allOrNothing) {
+                    connection.rollback();
+                    return ids;
+                }
+                updateCounts = e.getUpdateCounts();
+            }
+
+            // generated keys come back only for the rows that were inserted, in batch order
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                for (int i = 0; i < updateCounts.length; i++) {
+                    if (updateCounts[i] != Statement.EXECUTE_FAILED && rs.next()) {
+                        ids.set(i, rs.getInt(1));
+                    }
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return new ArrayList<>(Collections.nCopies(messages.size(), null));
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return ids;
+    }
+
     public List<Message> getAllMessages(){
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
         try {
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT * FROM message";
 
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery();
-            while(rs.next()){
-                Message message = new Message(
-                    rs.getInt("message_id"), 
-                    rs.getInt("posted_by"), 
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch")
-                );
-                messages.add(message);
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(toMessage(rs));
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
-        return messages; 
+        return messages;
     }
 
 
     public Message getMessageByMessageId(int message_id){
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         try {
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
             ps.setInt(1, message_id);
 
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {   
-                return new Message(
-                    rs.getInt("message_id"),
-                    rs.getInt("posted_by"),
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch")
-                );
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return toMessage(rs);
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return null;
     }
 
+    /**
+     * Reads the messages with any of these ids in one query, binding the ids as a single array parameter so every
+     * call shares one cached statement.
+     * @return the messages that exist, in no particular order
+     * @throws IllegalStateException if the query failed, so a database error is not taken for deleted messages
+     */
+    public List<Message> getMessagesByIds(List<Integer> message_ids) {
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>(message_ids.size());
+        try {
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+                    + "WHERE message_id = ANY(?)";
+
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
+            ps.setObject(1, message_ids.toArray(new Integer[0]));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(toMessage(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read messages " + message_ids, e);
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the message and returns the deleted row from the same statement, using H2's OLD TABLE data change
+     * delta table, so there is no window between reading and deleting it.
+     * @return the deleted message, or null if there was no message with that id
+     */
     public Message deleteByMessageId(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         try {
-            String sql = "DELETE FROM message WHERE message_id = ?"; 
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM OLD TABLE "
+                    + "(DELETE FROM message WHERE message_id = ?)";
 
-            PreparedStatement ps = connection.prepareStatement(sql);
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
             ps.setInt(1, message_id);
 
-            int rowsAffected = ps.executeUpdate();
-            System.out.println(rowsAffected + " row(s) deleted");
-        } catch (Exception e) {
-            e.printStackTrace();
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return toMessage(rs);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return null;
     }
 
+    /**
+     * Updates the message text and reads the updated row back in the same statement, using H2's FINAL TABLE
+     * data change delta table.
+     * @return the updated message, or null if there is no message with that id
+     */
     public Message updateByMessageId(Message message, int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         try {
-            String sql = "UPDATE Message SET message_text = ? WHERE message_id = ?;";
-            PreparedStatement ps = connection.prepareStatement(sql);
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM FINAL TABLE "
+                    + "(UPDATE Message SET message_text = ? WHERE message_id = ?)";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
 
             ps.setString(1, message.getMessage_text());
             ps.setInt(2, message_id);
 
-            ps.executeUpdate();
-            return getMessageByMessageId(message_id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return toMessage(rs);
+                }
+            }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return null;
     }
 
-
-
     public List<Message> getAllMessagesByAccountId(int account_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
         try {
-            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM Message WHERE posted_by = ?"; 
-            PreparedStatement ps = connection.prepareStatement(sql);
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM Message "
+                + "USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? "
+                + "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
             ps.setInt(1, account_id);
 
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                Message newMessage = new Message(
-                    rs.getInt("message_id"), 
-                    rs.getInt("posted_by"),
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch")
-                );
-                messages.add(newMessage);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(toMessage(rs));
+                }
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
         return messages;
     }
-}
\ No newline at end of file
+
+    /**
+     * Hands every message to the consumer, in message_id order, as its row is read. Nothing is accumulated, so memory
+     * use does not depend on the size of the table.
+     * @return false if the query failed, possibly after some messages were handed over
+     */
+    public boolean forEachMessage(Consumer<Message> consumer) {
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message ORDER BY message_id";
+        return streamQuery(sql, null, consumer);
+    }
+
+    /**
+     * Hands every message posted by the account to the consumer, newest first, as its row is read.
+     * @return false if the query failed, possibly after some messages were handed over
+     */
+    public boolean forEachMessageByAccountId(int account_id, Consumer<Message> consumer) {
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM Message "
+                + "USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? "
+                + "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC";
+        return streamQuery(sql, account_id, consumer);
+    }
+
+    /**
+     * H2 normally materializes a whole result before returning the first row. Lazy execution is switched on for the
+     * duration of the query so rows are produced as the ResultSet advances.
+     * @return false if the query failed, possibly after some rows were handed over
+     */
+    private boolean streamQuery(String sql, Integer account_id, Consumer<Message> consumer) {
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            ConnectionUtil.prepareStatement(connection, "SET LAZY_QUERY_EXECUTION TRUE").executeUpdate();
+            try {
+                PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
+                if (account_id != null) {
+                    ps.setInt(1, account_id);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(toMessage(rs));
+                    }
+                }
+            } finally {
+                ConnectionUtil.prepareStatement(connection, "SET LAZY_QUERY_EXECUTION FALSE").executeUpdate();
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return false;
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Keyset page over all messages in message_id order.
+     * @param after the cursor of the last message of the previous page, or null for the first page
+     * @return up to limit messages posted after the cursor
+     */
+    public List<Message> getMessagesPage(MessageCursor after, int limit) {
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>(limit);
+        try {
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+                    + "WHERE message_id > ? ORDER BY message_id LIMIT ?";
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql);
+            ps.setInt(1, after == null ? 0 : after.getMessage_id());
+            ps.setInt(2, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(toMessage(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return messages;
+    }
+
+    /**
+     * The account timeline: one account's messages, newest first, read through the
+     * (posted_by, time_posted_epoch DESC) index so the cost depends on the page size rather than the table size.
+     * @param before the cursor of the last message of the previous page, or null for the first page
+     * @param since if not null, only messages with time_posted_epoch >= since
+     * @param until if not null, only messages with time_posted_epoch <= until
+     * @return up to limit messages posted by the account that are older than the cursor
+     */
+    public List<Message> getTimeline(int account_id, MessageCursor before, Long since, Long until, int limit) {
+        // H2 costs the foreign key's own posted_by index the same as the timeline index and would then sort every row
+        // of the account, so the timeline index is named explicitly
+        StringBuilder sql = new StringBuilder("SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+                + "USE INDEX (message_posted_by_time_idx) WHERE posted_by = ?");
+        if (before != null) {
+            sql.append(" AND (time_posted_epoch < ? OR (time_posted_epoch = ? AND message_id < ?))");
+        }
+        if (since != null) {
+            sql.append(" AND time_posted_epoch >= ?");
+        }
+        if (until != null) {
+            sql.append(" AND time_posted_epoch <= ?");
+        }
+        // posted_by is constant here, but H2 only reads rows in index order (and stops at the limit) when the ORDER BY
+        // starts with the index's leading column
+        sql.append(" ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?");
+
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>(limit);
+        try {
+            connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql.toString());
+            int index = 1;
+            ps.setInt(index++, account_id);
+            if (before != null) {
+                ps.setLong(index++, before.getTime_posted_epoch());
+                ps.setLong(index++, before.getTime_posted_epoch());
+                ps.setInt(index++, before.getMessage_id());
+            }
+            if (since != null) {
+                ps.setLong(index++, since);
+            }
+            if (until != null) {
+                ps.setLong(index++, until);
+            }
+            ps.setInt(index, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(toMessage(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return messages;
+    }
+
+    private Message toMessage(ResultSet rs) throws SQLException {
+        return new Message(
+            rs.getInt("message_id"),
+            rs.getInt("posted_by"),
+            rs.getString("message_text"),
+            rs.getLong("time_posted_epoch")
+        );
+    }
+}
@@ -0,0 +1,59 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one message in a batch submitted to POST /messages/batch. Exactly one of
+ * message_id (the id generated for a saved message) and error (why the message was not saved) is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageBatchResult {
+    /**
+     * The id generated by the database for the saved message, or null if it was not saved.
+     */
+    public Integer message_id;
+    /**
+     * A description of why the message was not saved, or null if it was saved.
+     */
+    public String error;
+
+    public MessageBatchResult(){
+    }
+
+    public MessageBatchResult(Integer message_id, String error) {
+        this.message_id = message_id;
+        this.error = error;
+    }
+
+    public static MessageBatchResult saved(int message_id) {
+        return new MessageBatchResult(message_id, null);
+    }
+
+    public static MessageBatchResult failed(String error) {
+        return new MessageBatchResult(null, error);
+    }
+
+    public Integer getMessage_id() {
+        return message_id;
+    }
+
+    public void setMessage_id(Integer message_id) {
+        this.message_id = message_id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "message_id=" + message_id +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -2,35 +2,191 @@ package Service;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.DatabaseExecutor;
+import Util.PasswordHasher;
+import Util.ReadThroughCache;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AccountService {
 
     private static AccountDAO accountDAO;
+    /**
+     * Accounts by username. A username that does not exist is remembered for a short TTL so bursts of logins for
+     * unknown names do not each reach the database; registering the name replaces that entry immediately.
+     */
+    private static ReadThroughCache<String, Account> accountCache;
+    /**
+     * The account_id of every account, loaded at startup and added to on each registration, so a known
+     * message poster is checked without a query. An id missing from the set is looked up before it is refused.
+     */
+    private static Set<Integer> accountIds;
+    /**
+     * Hashes passwords on its own bounded pool. The work factor is accounts.password.iterations when set, otherwise
+     * whatever takes about accounts.password.targetMillis on this machine.
+     */
+    private static PasswordHasher passwordHasher;
+    /**
+     * Verified in place of a missing account's hash, so a login for an unknown username takes as long as a wrong
+     * password and does not tell which usernames exist.
+     */
+    private static String missingAccountHash;
+    /**
+     * Runs the queries that follow a hash, so a hashing thread hands its result over instead of waiting on JDBC.
+     */
+    private static DatabaseExecutor dbExecutor;
+    /**
+     * Recently verified logins, keyed by username and stored hash, holding a salted SHA-256 of the password. A repeated
+     * login with the same password is accepted on it instead of running the key derivation again; a different password
+     * is still verified the slow way. The salt is
+     * random per process and never stored, and a changed stored hash no longer matches any key.
+     */
+    private static ReadThroughCache<String, byte[]> verifiedLogins;
+    private static final byte[] VERIFIED_LOGIN_SALT = new byte[16];
+
+    static {
+        new SecureRandom().nextBytes(VERIFIED_LOGIN_SALT);
+    }
     
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, new DatabaseExecutor(0, 0));
+    }
+
+    /**
+     * @param dbExecutor runs the inserts and updates that follow hashing a password
+     */
+    public AccountService(AccountDAO accountDAO, DatabaseExecutor dbExecutor) {
         AccountService.accountDAO = accountDAO;
+        AccountService.dbExecutor = dbExecutor;
+        if (passwordHasher != null) {
+            passwordHasher.shutdown();
+        }
+        Integer iterations = Integer.getInteger("accounts.password.iterations");
+        passwordHasher = new PasswordHasher(iterations != null ? iterations
+                        : PasswordHasher.calibrate(Long.getLong("accounts.password.targetMillis", 50)),
+                Integer.getInteger("accounts.password.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("accounts.password.queueCapacity", 1000));
+        missingAccountHash = passwordHasher.hash("");
+        verifiedLogins = new ReadThroughCache<>(Integer.getInteger("accounts.password.verifiedCacheSize", 10000),
+                Long.getLong("accounts.password.verifiedTtlMillis", 300000));
+        accountCache = new ReadThroughCache<>(Integer.getInteger("accounts.cache.maxSize", 10000),
+                Long.getLong("accounts.cache.ttlMillis", 0),
+                Long.getLong("accounts.cache.negativeTtlMillis", 5000));
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        boolean complete = accountDAO.forEachAccount(existing -> ids.add(existing.getAccount_id()));
+        if (!complete) {
+            System.out.println("Could not read every account; accounts missing from memory are looked up when used");
+        }
+        accountIds = ids;
     }
 
-    public static Account registerAccount(Account account) {
-        if (account.getUsername().isEmpty()
-                    || account.getPassword().length() < 4
-                    || accountDAO.getAccountByUsername(account.getUsername()) != null) {
-                return null;
+    /**
+     * Hashes the password on the hashing pool, then inserts the account on the database executor.
+     * @return a future of the registered account including its account_id and the password as submitted, or of null
+     * if the input is invalid or the username is already taken (detected by the database's unique constraint rather
+     * than a separate lookup)
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing queue is full; the future fails with it if
+     * the database executor's queue is
+     */
+    public static CompletableFuture<Account> registerAccount(Account account) {
+        if (account.getUsername() == null || account.getUsername().isEmpty()
+                    || account.getPassword() == null || account.getPassword().length() < 4) {
+                return CompletableFuture.completedFuture(null);
         } else {
-            Account newAccount = accountDAO.registerAccount(account);
-            return newAccount;
+            return passwordHasher.hashAsync(account.getPassword()).thenCompose(hash -> dbExecutor.supply(() -> {
+                Account newAccount = accountDAO.registerAccount(new Account(account.getUsername(), hash));
+                if (newAccount == null) {
+                    return null;
+                }
+                accountIds.add(newAccount.getAccount_id());
+                accountCache.put(newAccount.getUsername(), newAccount);
+                return new Account(newAccount.getAccount_id(), newAccount.getUsername(), account.getPassword());
+            }));
+        }
+    }
+
+    public static ReadThroughCache<String, Account> getAccountCache() {
+        return accountCache;
+    }
+
+    /**
+     * @return true if an account with this id has been registered; answered from memory for every account this
+     * process has seen, and from the database for one created elsewhere or missed by a failed startup scan
+     * @throws IllegalStateException if the account had to be looked up and could not be read
+     */
+    public static boolean accountExists(int account_id) {
+        if (accountIds.contains(account_id)) {
+            return true;
+        }
+        if (accountDAO.accountExists(account_id)) {
+            accountIds.add(account_id);
+            return true;
         }
+        return false;
+    }
+
+    public static PasswordHasher getPasswordHasher() {
+        return passwordHasher;
+    }
+
+    public static ReadThroughCache<String, byte[]> getVerifiedLogins() {
+        return verifiedLogins;
     }
 
-    public static Account userLogin(String username, String password) {
+    /**
+     * Verifies the password on the hashing pool unless the same login was verified recently. A password stored as
+     * legacy plaintext or with an outdated work factor is rehashed and then saved on the database executor once it has
+     * been verified.
+     * @return a future of the account with the password as submitted, or of null if the credentials do not match
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing queue is full
+     * @throws IllegalStateException if the account could not be read
+     */
+    public static CompletableFuture<Account> userLogin(String username, String password) {
         if (username == null || password == null) {
             throw new IllegalArgumentException("Username and password are required");
         }
-        Account account = accountDAO.getAccountByUsername(username);
-        if (account == null || !account.getPassword().equals(password)) {
-            return null;
-        } else {
-            return account;
+        Account account = accountCache.get(username, accountDAO::getAccountByUsername);
+        if (account == null) {
+            return passwordHasher.verifyAsync(password, missingAccountHash).thenApply(matches -> null);
+        }
+        Account loggedIn = new Account(account.getAccount_id(), account.getUsername(), password);
+        String stored = account.getPassword();
+        String verifiedKey = username + "\n" + stored;
+        byte[] digest = loginDigest(password);
+        byte[] verified = verifiedLogins.getIfPresent(verifiedKey);
+        // the cache only confirms a password already verified; any other guess pays the key derivation below, so a
+        // cached login does not make guessing that account's password cheap
+        if (verified != null && MessageDigest.isEqual(verified, digest)) {
+            return CompletableFuture.completedFuture(loggedIn);
         }
+        return passwordHasher.verifyAsync(password, stored).thenCompose(matches -> {
+            if (!matches) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!passwordHasher.needsRehash(stored)) {
+                verifiedLogins.put(verifiedKey, digest);
+                return CompletableFuture.completedFuture(loggedIn);
+            }
+            String rehashed = passwordHasher.hash(password);
+            return dbExecutor.supply(() -> {
+                if (accountDAO.updatePassword(account.getAccount_id(), stored, rehashed)) {
+                    accountCache.put(username, new Account(account.getAccount_id(), username, rehashed));
+                    verifiedLogins.put(username + "\n" + rehashed, digest);
+                }
+                return loggedIn;
+            });
+        });
+    }
+
+    private static byte[] loginDigest(String password) {
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        byte[] salted = new byte[VERIFIED_LOGIN_SALT.length + passwordBytes.length];
+        System.arraycopy(VERIFIED_LOGIN_SALT, 0, salted, 0, VERIFIED_LOGIN_SALT.length);
+        System.arraycopy(passwordBytes, 0, salted, VERIFIED_LOGIN_SALT.length, passwordBytes.length);
+        return PasswordHasher.sha256(salted);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,368 @@
+package Service;
+
+import Model.Message;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Pushes every message created, updated or deleted through MessageService to live subscribers. An event is encoded
+ * once and offered to each matching subscriber's bounded buffer, so the writing request never waits on a client.
+ * A small pool of sender threads drains the buffers, each subscriber on at most one sender at a time so its events
+ * stay in order. A subscriber whose buffer is full has fallen bufferSize events behind and is disconnected rather
+ * than buffered without bound; it can reconnect and catch up from GET /messages.
+ *
+ * Writes to a client are asynchronous: a sender starts one and moves on, and the subscriber's next write is started
+ * when it completes. A write that has not completed within writeTimeoutMillis means the client stopped reading, and
+ * it is evicted at once, so a stalled client never holds a sender thread. Heartbeats are queued like events, so a
+ * client that disconnected without closing is found by the failed or stalled write.
+ */
+public class MessageBroadcaster {
+    /**
+     * Writes to one client. At most one write is pending at a time, and the connection is closed only when none is.
+     */
+    public interface Connection {
+        /**
+         * Starts writing the event without waiting for the client.
+         * @return a future completed once the event has been written, or exceptionally if the write failed
+         */
+        CompletableFuture<Void> send(String type, String json);
+
+        CompletableFuture<Void> heartbeat();
+
+        /**
+         * Ends the stream after the events written so far.
+         */
+        void close();
+
+        /**
+         * Drops the connection at once, abandoning a write that did not complete.
+         */
+        void abort();
+    }
+
+    private static final Event HEARTBEAT = new Event(null, null);
+    /**
+     * Events one sender turn writes to a subscriber before the sender moves on to the next one.
+     */
+    private static final int MAX_EVENTS_PER_TURN = 64;
+
+    private final Function<Message, String> encoder;
+    private final int bufferSize;
+    private final long writeTimeoutMillis;
+    private final Set<Subscription> everyPoster = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Set<Subscription>> byPoster = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+    private final ScheduledExecutorService heartbeats;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param encoder the JSON for a message, computed once per event
+     * @param bufferSize events a subscriber may fall behind before it is evicted
+     * @param senderThreads threads starting writes to clients; none of them waits for a client
+     * @param writeTimeoutMillis how long one write may take before its subscriber is evicted
+     * @param heartbeatMillis how often every subscriber is sent a heartbeat; 0 sends none
+     */
+    public MessageBroadcaster(Function<Message, String> encoder, int bufferSize, int senderThreads,
+                              long writeTimeoutMillis, long heartbeatMillis) {
+        this.encoder = encoder;
+        this.bufferSize = bufferSize;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        // at most one task per subscriber is queued, so the queue is bounded by the number of subscribers
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "message-broadcaster-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-broadcaster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatMillis > 0) {
+            heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeatMillis, heartbeatMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param posted_by only send events for messages by this account, or null for every message
+     * @return the subscription, to be cancelled when the client disconnects
+     */
+    public Subscription subscribe(Integer posted_by, Connection connection) {
+        Subscription subscription = new Subscription(posted_by, connection);
+        subscribers(posted_by).add(subscription);
+        subscriberCount.incrementAndGet();
+        return subscription;
+    }
+
+    /**
+     * Sends the event to every subscriber for all messages or for the message's poster.
+     * @param type created, updated or deleted
+     */
+    public void publish(String type, Message message) {
+        Set<Subscription> posterSubscribers = byPoster.get(message.getPosted_by());
+        if (everyPoster.isEmpty() && (posterSubscribers == null || posterSubscribers.isEmpty())) {
+            return;
+        }
+        Event event = new Event(type, encoder.apply(message));
+        published.incrementAndGet();
+        for (Subscription subscription : everyPoster) {
+            subscription.offer(event);
+        }
+        if (posterSubscribers != null) {
+            for (Subscription subscription : posterSubscribers) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return events written to subscribers, not counting heartbeats
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return subscribers disconnected because their buffer was full or a write to them timed out
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * Disconnects every subscriber and stops the sender and heartbeat threads.
+     */
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        for (Subscription subscription : everyPoster) {
+            subscription.close();
+        }
+        for (Set<Subscription> subscriptions : byPoster.values()) {
+            for (Subscription subscription : subscriptions) {
+                subscription.close();
+            }
+        }
+        senders.shutdown();
+    }
+
+    private Set<Subscription> subscribers(Integer posted_by) {
+        return posted_by == null ? everyPoster
+                : byPoster.computeIfAbsent(posted_by, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    private void sendHeartbeats() {
+        for (Subscription subscription : everyPoster) {
+            subscription.offer(HEARTBEAT);
+        }
+        for (Set<Subscription> subscriptions : byPoster.values()) {
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * @return what the completed write failed with, or null if it succeeded
+     */
+    private static Throwable failureOf(CompletableFuture<Void> write) {
+        try {
+            write.join();
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            return e;
+        }
+    }
+
+    private static class Event {
+        final String type;
+        final String json;
+
+        Event(String type, String json) {
+            this.type = type;
+            this.json = json;
+        }
+    }
+
+    public class Subscription {
+        private final Integer posted_by;
+        private final Connection connection;
+        private final ArrayBlockingQueue<Event> buffer = new ArrayBlockingQueue<>(bufferSize);
+        /**
+         * True while a sender turn or a pending write owns the connection.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /**
+         * True once the broadcaster itself dropped the subscriber, which closes the connection; a cancelled
+         * subscriber's client is already gone, so its connection is left alone.
+         */
+        private final AtomicBoolean closeRequested = new AtomicBoolean();
+        private final AtomicBoolean connectionClosed = new AtomicBoolean();
+
+        private Subscription(Integer posted_by, Connection connection) {
+            this.posted_by = posted_by;
+            this.connection = connection;
+        }
+
+        /**
+         * Stops sending to this subscriber. Called when its client disconnects; never closes the connection. A write
+         * already in progress is left to complete; only if it fails or times out is the connection aborted.
+         */
+        public void cancel() {
+            detach();
+        }
+
+        /**
+         * @return true if this call detached the subscriber, false if it already was
+         */
+        private boolean detach() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            subscribers(posted_by).remove(this);
+            subscriberCount.decrementAndGet();
+            buffer.clear();
+            return true;
+        }
+
+        private void offer(Event event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                // too far behind: drop the client rather than its events
+                evicted.incrementAndGet();
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        private void close() {
+            closeRequested.set(true);
+            // a turn or write in progress closes the connection when it finishes
+            if (detach() && scheduled.compareAndSet(false, true)) {
+                closeConnection();
+            }
+        }
+
+        private void closeConnection() {
+            if (connectionClosed.compareAndSet(false, true)) {
+                try {
+                    senders.execute(connection::close);
+                } catch (RejectedExecutionException e) {
+                    connection.close();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                resume();
+            }
+        }
+
+        /**
+         * Starts another turn on a sender; the caller owns the connection.
+         */
+        private void resume() {
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                scheduled.set(false);
+                if (closeRequested.get()) {
+                    closeConnection();
+                }
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < MAX_EVENTS_PER_TURN && !closed.get(); i++) {
+                Event event = buffer.poll();
+                if (event == null) {
+                    break;
+                }
+                CompletableFuture<Void> write;
+                try {
+                    write = event == HEARTBEAT ? connection.heartbeat() : connection.send(event.type, event.json);
+                } catch (RuntimeException e) {
+                    write = CompletableFuture.failedFuture(e);
+                }
+                if (!write.isDone()) {
+                    // the client has not taken it yet: give the thread back and continue once it has
+                    write.orTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS).whenComplete((ignored, failure) -> {
+                        if (written(event, failure)) {
+                            resume();
+                        }
+                    });
+                    return;
+                }
+                if (!written(event, failureOf(write))) {
+                    return;
+                }
+            }
+            scheduled.set(false);
+            if (closeRequested.get()) {
+                closeConnection();
+            } else if (!closed.get() && !buffer.isEmpty()) {
+                // events offered while this turn was finishing, or left over after it, need another turn
+                schedule();
+            }
+        }
+
+        /**
+         * @return true if the event was written and sending can go on
+         */
+        private boolean written(Event event, Throwable failure) {
+            if (failure == null) {
+                if (event != HEARTBEAT) {
+                    delivered.incrementAndGet();
+                }
+                return true;
+            }
+            if (failure instanceof CompletionException) {
+                failure = failure.getCause();
+            }
+            if (failure instanceof TimeoutException) {
+                // the client stopped reading
+                evicted.incrementAndGet();
+            }
+            // otherwise the client is gone; either way its write will not finish, so it cannot be closed in order
+            detach();
+            if (connectionClosed.compareAndSet(false, true)) {
+                connection.abort();
+            }
+            return false;
+        }
+    }
+}
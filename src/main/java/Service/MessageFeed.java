@@ -0,0 +1,352 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.MessageCursor;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Every message in memory as an immutable snapshot ordered by message_id, for serving GET /messages without JDBC.
+ * Readers take the current snapshot from a volatile field and never lock. Writers in MessageService apply their
+ * committed change under a lock and publish a new snapshot that shares every chunk it did not touch, so a write copies
+ * one chunk of at most {@value #CHUNK_SIZE} messages plus the array of chunk references.
+ *
+ * Writes made through MessageService are visible as soon as they are applied. They arrive after their commits;
+ * MessageService applies the updates and deletes of one message in the order they committed, but a new message's
+ * apply can arrive after an update or delete of it. So a new message is only added if its id is not there yet, and a
+ * deleted id is remembered so no later apply puts it back. Anything that changes the message table behind the
+ * service's back is picked up by a full reload every refresh interval, which bounds how stale the feed can get. Writes
+ * applied while a reload is reading are replayed onto the reloaded snapshot; they are upserts and deletes by id, so
+ * replaying one the reload already saw is harmless.
+ */
+public class MessageFeed {
+    private static final int CHUNK_SIZE = 64;
+
+    private final MessageDAO messageDAO;
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long refreshedAt;
+    private List<UnaryOperator<Snapshot>> replay;
+    /**
+     * Ids deleted since the refresh before last. An apply still in flight when a refresh completes is at most one
+     * refresh interval old, so older ids are forgotten.
+     */
+    private Set<Integer> deleted = new HashSet<>();
+    private Set<Integer> previouslyDeleted = new HashSet<>();
+    private final ScheduledExecutorService refresher;
+
+    /**
+     * Loads every message before returning.
+     * @param refreshMillis how often the feed is reloaded from the database; 0 only loads it once
+     */
+    public MessageFeed(MessageDAO messageDAO, long refreshMillis) {
+        this.messageDAO = messageDAO;
+        refresh();
+        if (refreshMillis > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-feed-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    /**
+     * Hands every message to the consumer in message_id order, from the snapshot current when the call started.
+     */
+    public void forEach(Consumer<Message> consumer) {
+        for (Message[] chunk : snapshot.chunks) {
+            for (Message message : chunk) {
+                consumer.accept(message);
+            }
+        }
+    }
+
+    /**
+     * @return every message in message_id order, as an unmodifiable view of the current snapshot's chunks
+     */
+    public List<Message> getAll() {
+        return new SnapshotList(snapshot);
+    }
+
+    /**
+     * @return up to limit messages with a message_id above the cursor's, in message_id order
+     */
+    public List<Message> getPage(MessageCursor after, int limit) {
+        Snapshot current = snapshot;
+        List<Message> page = new ArrayList<>(Math.min(limit, current.size));
+        int afterId = after == null ? Integer.MIN_VALUE : after.getMessage_id();
+        int chunkIndex = current.chunkFor(afterId);
+        for (int c = chunkIndex; c < current.chunks.length && page.size() < limit; c++) {
+            for (Message message : current.chunks[c]) {
+                if (message.getMessage_id() > afterId && page.size() < limit) {
+                    page.add(message);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Adds a saved message unless an update of it got here first or it has been deleted.
+     */
+    public void added(Message message) {
+        apply(current -> isDeleted(message.getMessage_id()) ? current : current.add(message));
+    }
+
+    /**
+     * Replaces an updated message, or adds it if its new message has not been applied yet.
+     */
+    public void updated(Message message) {
+        apply(current -> isDeleted(message.getMessage_id()) ? current : current.upsert(message));
+    }
+
+    /**
+     * Removes a deleted message and keeps it from being added again.
+     */
+    public void delete(int message_id) {
+        synchronized (writeLock) {
+            deleted.add(message_id);
+            apply(current -> current.delete(message_id));
+        }
+    }
+
+    private void apply(UnaryOperator<Snapshot> change) {
+        synchronized (writeLock) {
+            snapshot = change.apply(snapshot);
+            if (replay != null) {
+                replay.add(change);
+            }
+        }
+    }
+
+    private boolean isDeleted(int message_id) {
+        return deleted.contains(message_id) || previouslyDeleted.contains(message_id);
+    }
+
+    /**
+     * Reloads every message from the database and publishes the result with the writes made meanwhile applied.
+     */
+    public void refresh() {
+        synchronized (writeLock) {
+            replay = new ArrayList<>();
+        }
+        List<Message> loaded = new ArrayList<>();
+        boolean complete = messageDAO.forEachMessage(loaded::add);
+        synchronized (writeLock) {
+            if (!complete) {
+                // keep serving the previous snapshot rather than a partial one
+                replay = null;
+                return;
+            }
+            Snapshot reloaded = Snapshot.of(loaded);
+            for (UnaryOperator<Snapshot> change : replay) {
+                reloaded = change.apply(reloaded);
+            }
+            replay = null;
+            snapshot = reloaded;
+            previouslyDeleted = deleted;
+            deleted = new HashSet<>();
+            refreshedAt = System.currentTimeMillis();
+        }
+    }
+
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * @return milliseconds since the feed was last reloaded from the database
+     */
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - refreshedAt;
+    }
+
+    /**
+     * An immutable list of messages ordered by message_id, split into chunks that successive snapshots share.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new Message[0][], 0);
+
+        final Message[][] chunks;
+        final int size;
+        /**
+         * The position of each chunk's first message in the whole list.
+         */
+        final int[] offsets;
+
+        Snapshot(Message[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+            offsets = new int[chunks.length];
+            for (int c = 1; c < chunks.length; c++) {
+                offsets[c] = offsets[c - 1] + chunks[c - 1].length;
+            }
+        }
+
+        Message get(int index) {
+            int c = Arrays.binarySearch(offsets, index);
+            // a miss lands after the chunk holding the index
+            c = c >= 0 ? c : -c - 2;
+            return chunks[c][index - offsets[c]];
+        }
+
+        /**
+         * @param messages in message_id order
+         */
+        static Snapshot of(List<Message> messages) {
+            Message[][] chunks = new Message[(messages.size() + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = messages.subList(c * CHUNK_SIZE, Math.min(messages.size(), (c + 1) * CHUNK_SIZE))
+                        .toArray(new Message[0]);
+            }
+            return new Snapshot(chunks, messages.size());
+        }
+
+        /**
+         * @return the index of the first chunk whose last message_id is at least the id, or the last chunk if none is
+         */
+        int chunkFor(int message_id) {
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Message[] chunk = chunks[mid];
+                if (chunk[chunk.length - 1].getMessage_id() < message_id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Snapshot add(Message message) {
+            if (chunks.length > 0 && indexIn(chunks[chunkFor(message.getMessage_id())], message.getMessage_id()) >= 0) {
+                return this;
+            }
+            return upsert(message);
+        }
+
+        Snapshot upsert(Message message) {
+            if (chunks.length == 0) {
+                return new Snapshot(new Message[][] {{message}}, 1);
+            }
+            int c = chunkFor(message.getMessage_id());
+            Message[] chunk = chunks[c];
+            int index = indexIn(chunk, message.getMessage_id());
+            if (index >= 0) {
+                Message[] replaced = chunk.clone();
+                replaced[index] = message;
+                return withChunk(c, replaced, size);
+            }
+            int insertAt = -index - 1;
+            Message[] grown = new Message[chunk.length + 1];
+            System.arraycopy(chunk, 0, grown, 0, insertAt);
+            grown[insertAt] = message;
+            System.arraycopy(chunk, insertAt, grown, insertAt + 1, chunk.length - insertAt);
+            if (grown.length <= CHUNK_SIZE) {
+                return withChunk(c, grown, size + 1);
+            }
+            // split a full chunk in two so later writes keep copying at most one chunk
+            Message[][] split = new Message[chunks.length + 1][];
+            System.arraycopy(chunks, 0, split, 0, c);
+            split[c] = Arrays.copyOfRange(grown, 0, grown.length / 2);
+            split[c + 1] = Arrays.copyOfRange(grown, grown.length / 2, grown.length);
+            System.arraycopy(chunks, c + 1, split, c + 2, chunks.length - c - 1);
+            return new Snapshot(split, size + 1);
+        }
+
+        Snapshot delete(int message_id) {
+            if (chunks.length == 0) {
+                return this;
+            }
+            int c = chunkFor(message_id);
+            Message[] chunk = chunks[c];
+            int index = indexIn(chunk, message_id);
+            if (index < 0) {
+                return this;
+            }
+            if (chunk.length == 1) {
+                Message[][] fewer = new Message[chunks.length - 1][];
+                System.arraycopy(chunks, 0, fewer, 0, c);
+                System.arraycopy(chunks, c + 1, fewer, c, chunks.length - c - 1);
+                return new Snapshot(fewer, size - 1);
+            }
+            Message[] shrunk = new Message[chunk.length - 1];
+            System.arraycopy(chunk, 0, shrunk, 0, index);
+            System.arraycopy(chunk, index + 1, shrunk, index, chunk.length - index - 1);
+            return withChunk(c, shrunk, size - 1);
+        }
+
+        private Snapshot withChunk(int c, Message[] chunk, int newSize) {
+            Message[][] copy = chunks.clone();
+            copy[c] = chunk;
+            return new Snapshot(copy, newSize);
+        }
+
+        /**
+         * @return the index of the message_id in the chunk, or -(insertion point) - 1 like Arrays.binarySearch
+         */
+        private static int indexIn(Message[] chunk, int message_id) {
+            int low = 0;
+            int high = chunk.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int id = chunk[mid].getMessage_id();
+                if (id < message_id) {
+                    low = mid + 1;
+                } else if (id > message_id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    /**
+     * A snapshot read as a list without copying its chunks.
+     */
+    private static final class SnapshotList extends AbstractList<Message> implements RandomAccess {
+        private final Snapshot snapshot;
+
+        SnapshotList(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= snapshot.size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + snapshot.size);
+            }
+            return snapshot.get(index);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit for new messages. Callers put validated messages on a bounded queue and get a future back without
+ * waiting for the commit, so a group is not limited by how many threads are waiting on it; a single writer thread drains the queue into groups of up to maxBatchSize messages, waiting at most maxLingerMillis
+ * for a group to fill, and inserts each group as one JDBC batch in one transaction.
+ *
+ * Durability: a request's future is completed only after the transaction holding its message has committed, so a
+ * client that received a message_id has exactly the guarantee of the synchronous path. Messages still queued or in
+ * an uncommitted group when the process dies are lost, but none of their clients has been answered yet.
+ */
+public class MessageIngestQueue {
+    private final MessageDAO messageDAO;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final long enqueueTimeoutMillis;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicInteger largestGroup = new AtomicInteger();
+
+    public MessageIngestQueue(MessageDAO messageDAO, int capacity, int maxBatchSize, long maxLingerMillis,
+                              long enqueueTimeoutMillis) {
+        this.messageDAO = messageDAO;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.writer = new Thread(this::drain, "message-ingest-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return a future completed with the saved message (including its message_id) once its group has committed, or
+     * with null if the database rejected it
+     * @throws RejectedExecutionException if the queue stayed full for the enqueue timeout or the queue is shut down
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        Pending pending = new Pending(message);
+        boolean queued;
+        try {
+            queued = running && queue.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            throw new RejectedExecutionException("Message ingest queue is full");
+        }
+        return pending.future;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return groups the writer has inserted, each in one transaction
+     */
+    public long getGroupCount() {
+        return groups.get();
+    }
+
+    /**
+     * @return the most messages inserted by one group so far
+     */
+    public int getLargestGroup() {
+        return largestGroup.get();
+    }
+
+    /**
+     * Stops accepting messages and lets the writer commit whatever is already queued. The writer is not interrupted,
+     * because an interrupt during a write closes H2's file channel.
+     */
+    public void shutdown() {
+        running = false;
+    }
+
+    private void drain() {
+        List<Pending> group = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (group.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // nothing interrupts the writer on purpose; commit the group collected so far
+            }
+            if (!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            }
+        }
+        // anything that slipped in while shutting down will never be written
+        Pending leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.future.completeExceptionally(new RejectedExecutionException("Message ingest queue is shut down"));
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        List<Message> messages = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            messages.add(pending.message);
+        }
+        groups.incrementAndGet();
+        largestGroup.accumulateAndGet(group.size(), Math::max);
+        try {
+            List<Integer> ids = messageDAO.saveNewMessages(messages, false);
+            for (int i = 0; i < group.size(); i++) {
+                Integer id = ids.get(i);
+                Message message = group.get(i).message;
+                group.get(i).future.complete(id == null ? null
+                        : new Message(id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()));
+            }
+        } catch (RuntimeException e) {
+            for (Pending pending : group) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Pending {
+        final Message message;
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
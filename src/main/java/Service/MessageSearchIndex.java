@@ -0,0 +1,524 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory inverted index over message_text. Text is split into lowercase runs of letters and digits; each term
+ * maps to the sorted message_ids containing it, stored as variable-length deltas. Terms are kept sorted so a query
+ * term ending in * matches every term with that prefix. A query matches the messages containing all of its terms,
+ * and the newest k matches are returned by time_posted_epoch, then message_id.
+ *
+ * Searches share a read lock; MessageService applies each committed write under the write lock. It applies the
+ * updates and deletes of one message in the order they committed, but a new message's apply can still arrive after
+ * an update or delete of it: a new message is only indexed if its id is not indexed yet, and a deleted id is
+ * remembered so no later apply indexes it again. Anything that changes the
+ * message table behind the service's back is picked up by a full rebuild every rebuild interval; writes applied while
+ * a rebuild is reading are replayed onto the rebuilt index, as in {@link MessageFeed}.
+ */
+public class MessageSearchIndex {
+    private static final int STARTUP_ATTEMPTS = 3;
+
+    private final MessageDAO messageDAO;
+    private TreeMap<String, PostingList> postings = new TreeMap<>();
+    private HashMap<Integer, Document> documents = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Ids deleted since the rebuild before last. An apply still in flight when a rebuild completes is at most one
+     * rebuild interval old, so older ids are forgotten.
+     */
+    private Set<Integer> deleted = new HashSet<>();
+    private Set<Integer> previouslyDeleted = new HashSet<>();
+    private List<Consumer<MessageSearchIndex>> replay;
+    private final ScheduledExecutorService rebuilder;
+
+    /**
+     * Indexes every message before returning.
+     * @param rebuildMillis how often the index is rebuilt from the database; 0 only builds it once
+     * @throws IllegalStateException if the messages could not all be read at startup
+     */
+    public MessageSearchIndex(MessageDAO messageDAO, long rebuildMillis) {
+        this.messageDAO = messageDAO;
+        boolean built = false;
+        for (int attempt = 0; attempt < STARTUP_ATTEMPTS && !built; attempt++) {
+            built = rebuild();
+        }
+        if (!built) {
+            throw new IllegalStateException("Could not read every message to build the search index");
+        }
+        if (rebuildMillis > 0) {
+            rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-search-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+        } else {
+            rebuilder = null;
+        }
+    }
+
+    /**
+     * An index a rebuild reads the message table into.
+     */
+    private MessageSearchIndex() {
+        messageDAO = null;
+        rebuilder = null;
+    }
+
+    /**
+     * Indexes a newly saved message unless its id is already indexed, by an update or rebuild that read it since, or
+     * has been deleted.
+     */
+    public void added(Message message) {
+        apply(index -> index.addLocked(message));
+    }
+
+    /**
+     * Indexes the committed text of an updated message in place of what was indexed for it.
+     */
+    public void updated(Message message) {
+        apply(index -> index.replaceLocked(message));
+    }
+
+    /**
+     * Removes a deleted message and keeps it from being indexed again.
+     */
+    public void remove(int message_id) {
+        lock.writeLock().lock();
+        try {
+            deleted.add(message_id);
+            removeLocked(message_id);
+            if (replay != null) {
+                replay.add(index -> index.removeLocked(message_id));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<MessageSearchIndex> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(this);
+            if (replay != null) {
+                replay.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every message into a new index and publishes it with the writes applied meanwhile replayed.
+     * @return false if the messages could not all be read, in which case the current index is kept
+     */
+    public boolean rebuild() {
+        lock.writeLock().lock();
+        try {
+            replay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        MessageSearchIndex loaded = new MessageSearchIndex();
+        boolean complete = messageDAO.forEachMessage(loaded::addLocked);
+        lock.writeLock().lock();
+        try {
+            if (complete) {
+                for (Consumer<MessageSearchIndex> change : replay) {
+                    change.accept(loaded);
+                }
+                postings = loaded.postings;
+                documents = loaded.documents;
+                previouslyDeleted = deleted;
+                deleted = new HashSet<>();
+            }
+            replay = null;
+            return complete;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void shutdown() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    private boolean isDeleted(int message_id) {
+        return deleted.contains(message_id) || previouslyDeleted.contains(message_id);
+    }
+
+    private void addLocked(Message message) {
+        if (!documents.containsKey(message.getMessage_id()) && !isDeleted(message.getMessage_id())) {
+            indexLocked(message);
+        }
+    }
+
+    private void replaceLocked(Message message) {
+        if (!isDeleted(message.getMessage_id())) {
+            removeLocked(message.getMessage_id());
+            indexLocked(message);
+        }
+    }
+
+    private void indexLocked(Message message) {
+        String[] terms = tokenize(message.getMessage_text()).toArray(new String[0]);
+        for (int i = 0; i < terms.length; i++) {
+            PostingList list = postings.computeIfAbsent(terms[i], term -> new PostingList());
+            // share the dictionary's String instance instead of keeping a copy per document
+            terms[i] = postings.ceilingKey(terms[i]);
+            list.add(message.getMessage_id());
+        }
+        documents.put(message.getMessage_id(), new Document(terms, message.getTime_posted_epoch()));
+    }
+
+    private void removeLocked(int message_id) {
+        Document document = documents.remove(message_id);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms) {
+            PostingList list = postings.get(term);
+            list.remove(message_id);
+            if (list.size == 0) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * @param query terms separated by anything but letters and digits; a term directly followed by * is a prefix
+     * @return the message_ids of the newest limit messages containing every term, newest first
+     * @throws IllegalArgumentException if the query has no terms
+     */
+    public List<Integer> search(String query, int limit) {
+        List<QueryTerm> terms = parseQuery(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("q must contain at least one letter or digit");
+        }
+        lock.readLock().lock();
+        try {
+            int[] matches = null;
+            for (QueryTerm term : terms) {
+                int[] ids = term.prefix ? prefixIds(term.text) : exactIds(term.text);
+                matches = matches == null ? ids : intersect(matches, ids);
+                if (matches.length == 0) {
+                    return new ArrayList<>();
+                }
+            }
+            return newest(matches, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size of every encoded posting list together
+     */
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                bytes += list.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] exactIds(String term) {
+        PostingList list = postings.get(term);
+        return list == null ? new int[0] : list.decode();
+    }
+
+    private int[] prefixIds(String prefix) {
+        List<int[]> lists = new ArrayList<>();
+        int total = 0;
+        for (PostingList list : postings.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            int[] ids = list.decode();
+            lists.add(ids);
+            total += ids.length;
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        // concatenate, sort and drop duplicates once rather than merging the lists pairwise
+        int[] union = new int[total];
+        int n = 0;
+        for (int[] ids : lists) {
+            System.arraycopy(ids, 0, union, n, ids.length);
+            n += ids.length;
+        }
+        Arrays.sort(union);
+        int distinct = 0;
+        for (int i = 0; i < union.length; i++) {
+            if (distinct == 0 || union[i] != union[distinct - 1]) {
+                union[distinct++] = union[i];
+            }
+        }
+        return Arrays.copyOf(union, distinct);
+    }
+
+    /**
+     * Selects the newest limit ids with a min-heap of the best seen so far, so each candidate costs one epoch lookup
+     * and a comparison with the oldest of them unless it displaces it.
+     */
+    private List<Integer> newest(int[] ids, int limit) {
+        int[] heapIds = new int[Math.min(limit, ids.length)];
+        long[] heapEpochs = new long[heapIds.length];
+        int size = 0;
+        for (int id : ids) {
+            long epoch = documents.get(id).epoch;
+            if (size < heapIds.length) {
+                heapIds[size] = id;
+                heapEpochs[size] = epoch;
+                siftUp(heapIds, heapEpochs, size++);
+            } else if (heapIds.length > 0 && newer(epoch, id, heapEpochs[0], heapIds[0])) {
+                heapIds[0] = id;
+                heapEpochs[0] = epoch;
+                siftDown(heapIds, heapEpochs, size);
+            }
+        }
+        Integer[] result = new Integer[size];
+        while (size > 0) {
+            result[size - 1] = heapIds[0];
+            size--;
+            heapIds[0] = heapIds[size];
+            heapEpochs[0] = heapEpochs[size];
+            siftDown(heapIds, heapEpochs, size);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * Recency is time_posted_epoch, then message_id.
+     */
+    private static boolean newer(long epoch, int id, long otherEpoch, int otherId) {
+        return epoch > otherEpoch || (epoch == otherEpoch && id > otherId);
+    }
+
+    private static void siftUp(int[] ids, long[] epochs, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!newer(epochs[parent], ids[parent], epochs[index], ids[index])) {
+                return;
+            }
+            swap(ids, epochs, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] ids, long[] epochs, int size) {
+        int index = 0;
+        while (true) {
+            int oldest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (newer(epochs[oldest], ids[oldest], epochs[child], ids[child])) {
+                    oldest = child;
+                }
+            }
+            if (oldest == index) {
+                return;
+            }
+            swap(ids, epochs, oldest, index);
+            index = oldest;
+        }
+    }
+
+    private static void swap(int[] ids, long[] epochs, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        long epoch = epochs[a];
+        epochs[a] = epochs[b];
+        epochs[b] = epoch;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (QueryTerm term : parseQuery(text)) {
+            terms.add(term.text);
+        }
+        return terms;
+    }
+
+    private static List<QueryTerm> parseQuery(String text) {
+        List<QueryTerm> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                boolean prefix = i < text.length() && text.charAt(i) == '*';
+                terms.add(new QueryTerm(text.substring(start, i).toLowerCase(Locale.ROOT), prefix));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static class QueryTerm {
+        final String text;
+        final boolean prefix;
+
+        QueryTerm(String text, boolean prefix) {
+            this.text = text;
+            this.prefix = prefix;
+        }
+    }
+
+    private static class Document {
+        final String[] terms;
+        final long epoch;
+
+        Document(String[] terms, long epoch) {
+            this.terms = terms;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * Sorted message_ids encoded as the gaps between them, seven bits per byte with the high bit marking that more
+     * bytes follow. New messages get increasing ids, so adding one is usually an append; anything else re-encodes.
+     */
+    static class PostingList {
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int message_id) {
+            if (size > 0 && message_id <= last) {
+                int[] ids = decode();
+                if (Arrays.binarySearch(ids, message_id) >= 0) {
+                    return;
+                }
+                int[] grown = Arrays.copyOf(ids, ids.length + 1);
+                grown[ids.length] = message_id;
+                Arrays.sort(grown);
+                encode(grown);
+                return;
+            }
+            append(message_id - (size == 0 ? 0 : last));
+            last = message_id;
+            size++;
+        }
+
+        void remove(int message_id) {
+            int[] ids = decode();
+            int index = Arrays.binarySearch(ids, message_id);
+            if (index < 0) {
+                return;
+            }
+            int[] shrunk = new int[ids.length - 1];
+            System.arraycopy(ids, 0, shrunk, 0, index);
+            System.arraycopy(ids, index + 1, shrunk, index, ids.length - index - 1);
+            encode(shrunk);
+        }
+
+        int[] decode() {
+            int[] ids = new int[size];
+            int position = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += gap;
+                ids[i] = previous;
+            }
+            return ids;
+        }
+
+        private void encode(int[] ids) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(ids.length + 4);
+            int previous = 0;
+            for (int id : ids) {
+                int gap = id - previous;
+                while ((gap & ~0x7F) != 0) {
+                    out.write((gap & 0x7F) | 0x80);
+                    gap >>>= 7;
+                }
+                out.write(gap);
+                previous = id;
+            }
+            bytes = out.toByteArray();
+            length = bytes.length;
+            size = ids.length;
+            last = previous;
+        }
+
+        private void append(int gap) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+        }
+    }
+}
@@ -2,59 +2,423 @@ package Service;
 
 import DAO.MessageDAO;
 import Model.Message;
+import Model.MessageBatchResult;
+import Util.MessageCursor;
+import Util.ReadThroughCache;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 public class MessageService {
+    /**
+     * Striped by message_id. An update or delete holds its message's lock from its statement until the views below have
+     * applied it, so they apply the writes of one message in the order the database committed them without reading
+     * the row again. H2 already makes writes to one row wait for each other; writes to different messages only wait
+     * for each other when their ids share a stripe. ReentrantLock rather than the monitor so virtual threads waiting
+     * on the database while holding one do not pin their carrier threads.
+     */
+    private static final ReentrantLock[] WRITE_LOCKS = new ReentrantLock[1024];
+
+    static {
+        for (int i = 0; i < WRITE_LOCKS.length; i++) {
+            WRITE_LOCKS[i] = new ReentrantLock();
+        }
+    }
 
     private static MessageDAO messageDAO;
+    /**
+     * Group-commit queue for new messages, or null when messages are inserted synchronously (the default). Enabled
+     * with -Dmessages.ingest.mode=queue; see {@link MessageIngestQueue} for the durability semantics.
+     */
+    private static MessageIngestQueue ingestQueue;
+    /**
+     * Messages by id, in front of MessageDAO.getMessageByMessageId. Updates and deletes invalidate their entry; ids
+     * that do not exist are not cached, so new messages need no invalidation.
+     */
+    private static ReadThroughCache<Integer, Message> messageCache;
+    /**
+     * The newest messages of recently read accounts, kept current by every write below.
+     */
+    private static TimelineCache timelineCache;
+    private static MessageVersions versions;
+    /**
+     * In-memory snapshot of every message answering GET /messages, or null when it is read from the database (the
+     * default). Enabled with -Dmessages.feed.mode=snapshot.
+     */
+    private static MessageFeed feed;
+    /**
+     * Every message's text, indexed for GET /messages/search. Built from the message table here, kept current by every
+     * write below and rebuilt every messages.search.rebuildMillis.
+     */
+    private static MessageSearchIndex searchIndex;
+    /**
+     * Live subscribers told about every write below, or null when nothing is listening for them.
+     */
+    private static MessageBroadcaster broadcaster;
 
     public MessageService(){
+        this(null);
+    }
+
+    /**
+     * @param broadcaster pushes each created, updated and deleted message to live subscribers, or null for none
+     */
+    public MessageService(MessageBroadcaster broadcaster){
+        MessageService.broadcaster = broadcaster;
         messageDAO = new MessageDAO();
-    }  
+        messageCache = new ReadThroughCache<>(Integer.getInteger("messages.cache.maxSize", 10000),
+                Long.getLong("messages.cache.ttlMillis", 0));
+        versions = new MessageVersions();
+        timelineCache = new TimelineCache(Integer.getInteger("messages.timelineCache.depth", 100),
+                Long.getLong("messages.timelineCache.maxBytes", 16 * 1024 * 1024));
+        if (searchIndex != null) {
+            searchIndex.shutdown();
+        }
+        searchIndex = new MessageSearchIndex(messageDAO, Long.getLong("messages.search.rebuildMillis", 300000));
+        if (ingestQueue != null) {
+            ingestQueue.shutdown();
+            ingestQueue = null;
+        }
+        if (feed != null) {
+            feed.shutdown();
+            feed = null;
+        }
+        if ("snapshot".equals(System.getProperty("messages.feed.mode", "database"))) {
+            feed = new MessageFeed(messageDAO, Long.getLong("messages.feed.refreshMillis", 30000));
+        }
+        if ("queue".equals(System.getProperty("messages.ingest.mode", "sync"))) {
+            ingestQueue = new MessageIngestQueue(messageDAO,
+                    Integer.getInteger("messages.ingest.queueCapacity", 10000),
+                    Integer.getInteger("messages.ingest.maxBatchSize", 100),
+                    Long.getLong("messages.ingest.maxLingerMillis", 2),
+                    Long.getLong("messages.ingest.enqueueTimeoutMillis", 1000));
+        }
+    }
 
-    public static Message newMessage (Message message) {
-        // Validate that the message content is not empty
-        if (message == null || message.getMessage_text() == null 
-		|| message.getMessage_text().isEmpty() 
-		|| message.getMessage_text().length() > 255) { 
+    /**
+     * The rules every new message must pass: the text is not blank and is under 255 characters, and posted_by is a
+     * registered account. A known account is checked in memory; only an id this process has not seen costs a query.
+     * @throws IllegalArgumentException describing the first rule the message breaks
+     */
+    public static void validateNewMessage(Message message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message is required");
+        }
+        validateMessageText(message.getMessage_text());
+        if (!AccountService.accountExists(message.getPosted_by())) {
+            throw new IllegalArgumentException("posted_by must refer to an existing account");
+        }
+    }
 
+    private static void validateMessageText(String message_text) {
+        if (message_text == null || message_text.isEmpty()) {
             throw new IllegalArgumentException("Message content cannot be empty");
         }
-        Message savedMessage = messageDAO.saveNewMessage(message);
+        if (message_text.length() >= 255) {
+            throw new IllegalArgumentException("Message content must be under 255 characters");
+        }
+    }
+
+    /**
+     * @return the saved message including its message_id, or null if the database rejected it
+     * @throws java.util.concurrent.RejectedExecutionException if the ingest queue is enabled and stays full
+     */
+    public static Message newMessage (Message message) {
+        return newMessageAsync(message).join();
+    }
+
+    /**
+     * Validates and saves a new message. With the ingest queue enabled the caller gets the future back as soon as the
+     * message is queued and no thread waits for its group to commit; otherwise the message is inserted before this
+     * returns.
+     * @return a future of the saved message including its message_id, or of null if the database rejected it
+     * @throws IllegalArgumentException describing the first rule the message breaks
+     * @throws java.util.concurrent.RejectedExecutionException if the ingest queue is enabled and stays full
+     */
+    public static CompletableFuture<Message> newMessageAsync(Message message) {
+        validateNewMessage(message);
+        if (ingestQueue == null) {
+            return CompletableFuture.completedFuture(saved(messageDAO.saveNewMessage(message)));
+        }
+        return ingestQueue.submit(message).handle((savedMessage, failure) -> {
+            if (failure != null) {
+                System.out.println(failure.getMessage());
+                return null;
+            }
+            return saved(savedMessage);
+        });
+    }
+
+    /**
+     * Tells the in-memory views about a message that has been inserted.
+     * @return the message, or null if it was not saved
+     */
+    private static Message saved(Message savedMessage) {
+        if (savedMessage != null) {
+            if (feed != null) {
+                feed.added(savedMessage);
+            }
+            versions.changed(savedMessage.getMessage_id());
+            timelineCache.added(savedMessage);
+            searchIndex.added(savedMessage);
+            if (broadcaster != null) {
+                broadcaster.publish("created", savedMessage);
+            }
+        }
         return savedMessage;
     }
 
+    /**
+     * @return the number of messages waiting in the ingest queue, or 0 when messages are inserted synchronously
+     */
+    public static int getIngestQueueDepth() {
+        MessageIngestQueue queue = ingestQueue;
+        return queue == null ? 0 : queue.getQueueDepth();
+    }
+
+    /**
+     * @return the ingest queue, or null when messages are inserted synchronously
+     */
+    public static MessageIngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+
+    /**
+     * Validates every message of a batch with the same rules as {@link #newMessage} and saves the valid ones in one
+     * transaction.
+     * @param allOrNothing if true, nothing is saved unless every message is valid and saved
+     * @return one result per message, in the order given
+     */
+    public static List<MessageBatchResult> newMessages(List<Message> messages, boolean allOrNothing) {
+        List<MessageBatchResult> results = new ArrayList<>(Collections.nCopies(messages.size(), null));
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validIndexes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                validateNewMessage(messages.get(i));
+                valid.add(messages.get(i));
+                validIndexes.add(i);
+            } catch (IllegalArgumentException e) {
+                results.set(i, MessageBatchResult.failed(e.getMessage()));
+            }
+        }
+
+        boolean rejected = allOrNothing && valid.size() < messages.size();
+        List<Integer> ids = rejected || valid.isEmpty()
+                ? Collections.nCopies(valid.size(), null)
+                : messageDAO.saveNewMessages(valid, allOrNothing);
+        for (int i = 0; i < valid.size(); i++) {
+            Integer id = ids.get(i);
+            String error = rejected ? "Batch rejected because another message is invalid" : "Message could not be saved";
+            results.set(validIndexes.get(i), id == null ? MessageBatchResult.failed(error) : MessageBatchResult.saved(id));
+            if (id != null) {
+                Message message = valid.get(i);
+                saved(new Message(id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()));
+            }
+        }
+        return results;
+    }
+
     public static List<Message> getAllMessages() {
+        if (feed != null) {
+            return feed.getAll();
+        }
         List<Message> allMessages = messageDAO.getAllMessages();
         return allMessages;
     }
 
+    /**
+     * @return false if reading the messages failed part way, after some of them may have been handed over
+     */
+    public static boolean forEachMessage(Consumer<Message> consumer) {
+        if (feed != null) {
+            feed.forEach(consumer);
+            return true;
+        }
+        return messageDAO.forEachMessage(consumer);
+    }
+
+    public static List<Message> getMessagesPage(MessageCursor after, int limit) {
+        if (feed != null) {
+            return feed.getPage(after, limit);
+        }
+        return messageDAO.getMessagesPage(after, limit);
+    }
+
+    /**
+     * @return the in-memory feed, or null when GET /messages reads the database
+     */
+    public static MessageFeed getFeed() {
+        return feed;
+    }
+
     public static Message getMessageByMessageId(int message_id) {
-        Message message = messageDAO.getMessageByMessageId(message_id);
+        Message message = messageCache.get(message_id, messageDAO::getMessageByMessageId);
         return message;
     }
 
+    /**
+     * @return the quoted ETag of the message with this id; take it before reading the message
+     */
+    public static String getMessageETag(int message_id) {
+        return versions.messageTag(message_id);
+    }
+
+    /**
+     * @return the quoted ETag of every message list; take it before reading the list
+     */
+    public static String getListETag() {
+        return versions.listTag();
+    }
+
+    /**
+     * @param query terms that must all appear in message_text; a term ending in * matches any word it begins
+     * @return the newest limit matching messages, newest first by time_posted_epoch
+     * @throws IllegalArgumentException if the query has no terms
+     */
+    public static List<Message> searchMessages(String query, int limit) {
+        int wanted = limit;
+        while (true) {
+            List<Integer> ids = searchIndex.search(query, wanted);
+            Map<Integer, Message> found = new HashMap<>();
+            if (!ids.isEmpty()) {
+                for (Message message : messageDAO.getMessagesByIds(ids)) {
+                    found.put(message.getMessage_id(), message);
+                }
+            }
+            List<Message> messages = new ArrayList<>(ids.size());
+            for (int message_id : ids) {
+                Message message = found.get(message_id);
+                // null if the message was deleted after the search, or changed behind the index's back
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            // ids that no longer read back take the place of older matches, so look further for as many as went
+            // missing
+            if (messages.size() >= limit || ids.size() < wanted) {
+                return messages.size() > limit ? messages.subList(0, limit) : messages;
+            }
+            wanted += limit - messages.size();
+        }
+    }
+
+    /**
+     * @return the live subscribers' broadcaster, or null when there is none
+     */
+    public static MessageBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    public static MessageSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public static ReadThroughCache<Integer, Message> getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * @return the deleted message, or null if there was no message with that id
+     */
     public static Message deleteByMessageId(int message_id) {
-        Message message = messageDAO.getMessageByMessageId(message_id);
-        messageDAO.deleteByMessageId(message_id);
-        return message;
+        ReentrantLock lock = writeLock(message_id);
+        lock.lock();
+        try {
+            Message deletedMessage = messageDAO.deleteByMessageId(message_id);
+            messageCache.invalidate(message_id);
+            if (deletedMessage != null) {
+                if (feed != null) {
+                    feed.delete(message_id);
+                }
+                versions.changed(message_id);
+                timelineCache.deleted(deletedMessage);
+                searchIndex.remove(message_id);
+                if (broadcaster != null) {
+                    broadcaster.publish("deleted", deletedMessage);
+                }
+            }
+            return deletedMessage;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * @return the updated message, or null if there is no message with that id
+     * @throws IllegalArgumentException if the new text breaks the message rules
+     */
     public static Message updateByMessageId(Message updatedMessage, int message_id) {
-        Message existingMessage = messageDAO.getMessageByMessageId(message_id);
-        if (updatedMessage.getMessage_text() == null 
-		    || updatedMessage.getMessage_text().isEmpty() 
-		    || updatedMessage.getMessage_text().length() > 255) 
-	    { 
-            throw new IllegalArgumentException("Message not found with ID: " + message_id);
-        } else {
-            messageDAO.updateByMessageId(updatedMessage, message_id);
-            return existingMessage;
+        validateMessageText(updatedMessage.getMessage_text());
+        ReentrantLock lock = writeLock(message_id);
+        lock.lock();
+        try {
+            Message message = messageDAO.updateByMessageId(updatedMessage, message_id);
+            messageCache.invalidate(message_id);
+            if (message != null) {
+                if (feed != null) {
+                    feed.updated(message);
+                }
+                versions.changed(message_id);
+                timelineCache.updated(message);
+                searchIndex.updated(message);
+                if (broadcaster != null) {
+                    broadcaster.publish("updated", message);
+                }
+            }
+            return message;
+        } finally {
+            lock.unlock();
         }
     }
+
+    /**
+     * @return the lock the updates and deletes of this message hold from their statement until every view has applied
+     * them
+     */
+    private static ReentrantLock writeLock(int message_id) {
+        return WRITE_LOCKS[Math.floorMod(message_id, WRITE_LOCKS.length)];
+    }
     
     public static List<Message> getAllMessagesByAccountId (int account_id) {
-        List<Message> allMessages = messageDAO.getAllMessagesByAccountId(account_id);
+        List<Message> allMessages = timelineCache.getAll(account_id, newestMessages(account_id));
+        if (allMessages == null) {
+            allMessages = messageDAO.getAllMessagesByAccountId(account_id);
+        }
         return allMessages;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return false if reading the messages failed part way, after some of them may have been handed over
+     */
+    public static boolean forEachMessageByAccountId(int account_id, Consumer<Message> consumer) {
+        List<Message> allMessages = timelineCache.getAll(account_id, newestMessages(account_id));
+        if (allMessages != null) {
+            allMessages.forEach(consumer);
+            return true;
+        }
+        return messageDAO.forEachMessageByAccountId(account_id, consumer);
+    }
+
+    public static List<Message> getTimeline(int account_id, MessageCursor before, Long since, Long until, int limit) {
+        List<Message> page = timelineCache.getPage(account_id, before, since, until, limit,
+                newestMessages(account_id));
+        if (page == null) {
+            page = messageDAO.getTimeline(account_id, before, since, until, limit);
+        }
+        return page;
+    }
+
+    /**
+     * @return a loader reading the account's newest messages for the timeline cache
+     */
+    private static IntFunction<List<Message>> newestMessages(int account_id) {
+        return limit -> messageDAO.getTimeline(account_id, null, null, null, limit);
+    }
+
+    public static TimelineCache getTimelineCache() {
+        return timelineCache;
+    }
+}
@@ -0,0 +1,46 @@
+package Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Change counters behind the ETags of the message endpoints, kept in memory so a conditional GET is answered
+ * without a query. Every committed write bumps a global counter, which versions every list, and records the new
+ * value in the stripe of the message it touched, which versions that message. Messages share stripes, so a write can
+ * change the ETag of an unrelated message; that only costs one full response, never a wrong 304.
+ *
+ * A tag must be taken before the data it describes is read. A write that lands in between then makes the tag older
+ * than the body, which again only costs a full response later.
+ */
+public class MessageVersions {
+    private static final int STRIPES = 4096;
+
+    /**
+     * Distinguishes tags issued by this instance from those of an earlier process, whose counters started over.
+     */
+    private final long instance = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES);
+
+    /**
+     * Records a committed insert, update or delete of the message.
+     */
+    public void changed(int message_id) {
+        stripes.set(message_id & (STRIPES - 1), changes.incrementAndGet());
+    }
+
+    /**
+     * @return the quoted ETag for the message with this id, whether or not it exists
+     */
+    public String messageTag(int message_id) {
+        return "\"" + Long.toString(instance, 36) + "-" + message_id + "-" + stripes.get(message_id & (STRIPES - 1)) + "\"";
+    }
+
+    /**
+     * @return the quoted ETag shared by every message list, changing with any write
+     */
+    public String listTag() {
+        return "\"" + Long.toString(instance, 36) + "-" + changes.get() + "\"";
+    }
+}
@@ -0,0 +1,316 @@
+package Service;
+
+import Model.Message;
+import Util.MessageCursor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * The newest messages of recently read accounts, newest first. Every write is applied to the cached timeline of its
+ * account instead of dropping it. Accounts are evicted least recently used first once the estimated size of all cached
+ * messages exceeds the byte budget.
+ *
+ * A timeline is complete when it holds every message of the account; only then can it answer an unpaginated read.
+ * A page is answered from a timeline whenever the page is found inside it.
+ *
+ * Writes reach the cache after their commit. MessageService applies the updates and deletes of one message in the
+ * order they committed, but a new message's apply can arrive after an update or delete of it: an update of a message
+ * that is not cached yet inserts it, a new message that is already cached is left alone, and recently deleted ids are
+ * remembered so a late apply does not bring one back. A load that overlapped a write to the same account is returned
+ * but not stored, so a timeline never misses a write that committed around its load.
+ */
+public class TimelineCache {
+    /**
+     * Rough heap cost of a cached message besides its text: the Message, its String and the list slot.
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    /**
+     * A new message's apply follows its commit closely, so it only ever trails a delete of it by the few writes in
+     * flight; this many of the latest deleted ids are remembered.
+     */
+    private static final int DELETED_IDS = 10000;
+
+    private final int depth;
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Timeline> timelines = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The accounts being loaded, each with the writes to it since its first load in flight started.
+     */
+    private final HashMap<Integer, PendingLoads> loading = new HashMap<>();
+    private final Set<Integer> deleted = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+            return size() > DELETED_IDS;
+        }
+    });
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param depth most messages kept per account; 0 disables the cache
+     * @param maxBytes estimated size of all cached messages above which cold accounts are evicted
+     */
+    public TimelineCache(int depth, long maxBytes) {
+        this.depth = depth;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param loader reads the newest messages of the account, newest first, given how many to read
+     * @return every message of the account newest first, or null if the account has more than the cache depth
+     */
+    public List<Message> getAll(int account_id, IntFunction<List<Message>> loader) {
+        Timeline timeline = cached(account_id);
+        if (timeline != null && timeline.complete) {
+            hits.incrementAndGet();
+            return timeline.messages;
+        }
+        misses.incrementAndGet();
+        if (timeline == null) {
+            timeline = load(account_id, loader);
+        }
+        return timeline != null && timeline.complete ? timeline.messages : null;
+    }
+
+    /**
+     * @return up to limit of the account's messages newest first, older than before and posted between since and
+     * until when given, or null if the cache cannot tell which messages that page holds
+     */
+    public List<Message> getPage(int account_id, MessageCursor before, Long since, Long until, int limit,
+                                 IntFunction<List<Message>> loader) {
+        Timeline timeline = cached(account_id);
+        List<Message> page = timeline == null ? null : page(timeline, before, since, until, limit);
+        if (page != null) {
+            hits.incrementAndGet();
+            return page;
+        }
+        misses.incrementAndGet();
+        if (timeline == null) {
+            timeline = load(account_id, loader);
+        }
+        return timeline == null ? null : page(timeline, before, since, until, limit);
+    }
+
+    private static List<Message> page(Timeline timeline, MessageCursor before, Long since, Long until, int limit) {
+        List<Message> page = new ArrayList<>(Math.min(limit, timeline.messages.size()));
+        for (Message message : timeline.messages) {
+            if (page.size() == limit) {
+                break;
+            }
+            long epoch = message.getTime_posted_epoch();
+            if (before != null && (epoch > before.getTime_posted_epoch()
+                    || (epoch == before.getTime_posted_epoch() && message.getMessage_id() >= before.getMessage_id()))) {
+                continue;
+            }
+            if ((since != null && epoch < since) || (until != null && epoch > until)) {
+                continue;
+            }
+            page.add(message);
+        }
+        // an incomplete timeline only has the newest messages; a short page may continue past its end
+        return page.size() == limit || timeline.complete ? page : null;
+    }
+
+    private synchronized Timeline cached(int account_id) {
+        return timelines.get(account_id);
+    }
+
+    /**
+     * @return the account's timeline read through the loader, or null if it cannot be cached
+     */
+    private Timeline load(int account_id, IntFunction<List<Message>> loader) {
+        if (depth == 0) {
+            return null;
+        }
+        PendingLoads pending;
+        long seenWrites;
+        synchronized (this) {
+            pending = loading.computeIfAbsent(account_id, id -> new PendingLoads());
+            pending.loaders++;
+            seenWrites = pending.writes;
+        }
+        Timeline timeline = null;
+        try {
+            List<Message> loaded = loader.apply(depth + 1);
+            // the DAO answers an empty list when the query fails, so empty timelines are not trusted
+            if (!loaded.isEmpty()) {
+                timeline = new Timeline(loaded.subList(0, Math.min(depth, loaded.size())), loaded.size() <= depth);
+            }
+        } finally {
+            synchronized (this) {
+                if (--pending.loaders == 0) {
+                    loading.remove(account_id);
+                }
+                if (timeline != null && pending.writes == seenWrites && !timelines.containsKey(account_id)) {
+                    put(account_id, timeline);
+                }
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * Adds a message that has been saved, unless an update of it got here first or it has been deleted since.
+     */
+    public synchronized void added(Message message) {
+        wrote(message.getPosted_by());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        if (timeline == null || deleted.contains(message.getMessage_id())
+                || indexOf(timeline, message.getMessage_id()) >= 0) {
+            return;
+        }
+        insert(timeline, message);
+    }
+
+    /**
+     * Replaces a message with its updated text, or inserts it if its new message has not been applied yet.
+     */
+    public synchronized void updated(Message message) {
+        wrote(message.getPosted_by());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        if (timeline == null || deleted.contains(message.getMessage_id())) {
+            return;
+        }
+        int index = indexOf(timeline, message.getMessage_id());
+        if (index < 0) {
+            insert(timeline, message);
+            return;
+        }
+        List<Message> messages = new ArrayList<>(timeline.messages);
+        // an update keeps time_posted_epoch, so the message keeps its place
+        messages.set(index, message);
+        put(message.getPosted_by(), new Timeline(messages, timeline.complete));
+    }
+
+    /**
+     * Removes a deleted message and keeps it from being added again.
+     */
+    public synchronized void deleted(Message message) {
+        wrote(message.getPosted_by());
+        deleted.add(message.getMessage_id());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        int index = timeline == null ? -1 : indexOf(timeline, message.getMessage_id());
+        if (index < 0) {
+            return;
+        }
+        List<Message> messages = new ArrayList<>(timeline.messages);
+        // what is left of an incomplete timeline is still the account's newest messages
+        messages.remove(index);
+        put(message.getPosted_by(), new Timeline(messages, timeline.complete));
+    }
+
+    private void wrote(int account_id) {
+        PendingLoads pending = loading.get(account_id);
+        if (pending != null) {
+            pending.writes++;
+        }
+    }
+
+    private static int indexOf(Timeline timeline, int message_id) {
+        for (int i = 0; i < timeline.messages.size(); i++) {
+            if (timeline.messages.get(i).getMessage_id() == message_id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(Timeline timeline, Message message) {
+        List<Message> messages = new ArrayList<>(timeline.messages);
+        int index = 0;
+        while (index < messages.size() && NEWEST_FIRST.compare(messages.get(index), message) < 0) {
+            index++;
+        }
+        // a message older than everything kept may have older neighbours that were never loaded
+        if (index == messages.size() && !timeline.complete) {
+            return;
+        }
+        messages.add(index, message);
+        boolean complete = timeline.complete;
+        if (messages.size() > depth) {
+            messages.remove(messages.size() - 1);
+            complete = false;
+        }
+        put(message.getPosted_by(), new Timeline(messages, complete));
+    }
+
+    private void put(int account_id, Timeline timeline) {
+        Timeline replaced = timelines.put(account_id, timeline);
+        if (replaced != null) {
+            bytes -= replaced.bytes;
+        }
+        bytes += timeline.bytes;
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<Integer, Timeline>> eldest = timelines.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return timelines.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static long estimateBytes(Message message) {
+        return MESSAGE_OVERHEAD_BYTES + 2L * message.getMessage_text().length();
+    }
+
+    private static class PendingLoads {
+        int loaders;
+        long writes;
+    }
+
+    /**
+     * An immutable snapshot, replaced on every write so readers never need the lock to walk it.
+     */
+    private static class Timeline {
+        final List<Message> messages;
+        final boolean complete;
+        final long bytes;
+
+        Timeline(List<Message> messages, boolean complete) {
+            this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
+            this.complete = complete;
+            long total = 0;
+            for (Message message : messages) {
+                total += estimateBytes(message);
+            }
+            this.bytes = total;
+        }
+    }
+}
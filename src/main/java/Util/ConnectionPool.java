@@ -0,0 +1,300 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small bounded pool of JDBC connections. Callers borrow a connection with {@link #borrow()} and must hand it back
+ * with {@link #release(Connection)} once the operation is finished, so that every request thread gets its own H2
+ * session instead of queueing on a single shared one.
+ *
+ * The pool keeps at least minSize connections open, never opens more than maxSize, validates a connection before
+ * handing it out and periodically reports connections that have been borrowed for longer than the leak threshold.
+ * Each connection carries a {@link StatementCache} so repeated SQL is parsed once per connection rather than per call.
+ */
+public class ConnectionPool {
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakDetectionMillis;
+    private final int statementCacheSize;
+
+    /**
+     * Connections that are open but not currently borrowed. The most recently returned connection is handed out first.
+     */
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    /**
+     * One permit per connection that may still be borrowed; bounds the pool at maxSize.
+     */
+    private final Semaphore permits;
+    /**
+     * Connections currently borrowed, mapped to where and when they were borrowed for leak detection.
+     */
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    /**
+     * The prepared statement cache of every open connection.
+     */
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    /**
+     * Bumped to make every statement cache drop its statements the next time it is used, e.g. after the schema is
+     * recreated.
+     */
+    private final AtomicLong statementCacheGeneration = new AtomicLong();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, int validationTimeoutSeconds, long leakDetectionMillis,
+                          int statementCacheSize) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            idle.offer(open());
+        }
+
+        if (leakDetectionMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            leakDetector.scheduleWithFixedDelay(this::detectLeaks, leakDetectionMillis, leakDetectionMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * @return a validated connection for the exclusive use of the caller, who must pass it to {@link #release}.
+     * @throws SQLException if no connection became available within the acquire timeout or a new one could not be opened.
+     */
+    public Connection borrow() throws SQLException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a database connection");
+        }
+
+        try {
+            Connection connection = idle.pollFirst();
+            while (connection != null && !isUsable(connection)) {
+                closeQuietly(connection);
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                connection = open();
+            }
+            leases.put(connection, new Lease(leakDetector != null));
+            borrowCount.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Passing null is a no-op, so callers can release in a finally block
+     * even when borrowing failed.
+     */
+    public void release(Connection connection) {
+        if (connection == null || leases.remove(connection) == null) {
+            return;
+        }
+        try {
+            if (connection.isClosed()) {
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (closed) {
+                closeQuietly(connection);
+            } else {
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @param connection a connection currently borrowed from this pool
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return a prepared statement for the sql from the connection's statement cache. The statement stays owned by the
+     * cache: do not close it, but do close any ResultSet obtained from it.
+     */
+    public PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        StatementCache cache = statementCaches.get(connection);
+        if (cache == null) {
+            throw new SQLException("Connection is not managed by this pool");
+        }
+        return cache.prepare(sql, autoGeneratedKeys, statementCacheGeneration.get());
+    }
+
+    /**
+     * Makes every connection drop its cached statements before its next use.
+     */
+    public void invalidateStatementCaches() {
+        statementCacheGeneration.incrementAndGet();
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        statementCaches.put(connection, new StatementCache(connection, statementCacheSize,
+                statementCacheGeneration.get(), statementCacheHits, statementCacheMisses, statementCacheEvictions));
+        return connection;
+    }
+
+    private void closeQuietly(Connection connection) {
+        StatementCache cache = statementCaches.remove(connection);
+        if (cache != null) {
+            cache.clear();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases.values()) {
+            if (!lease.reported && now - lease.borrowedAt > leakDetectionMillis) {
+                lease.reported = true;
+                leakCount.incrementAndGet();
+                System.out.println("Possible connection leak: connection held for " + (now - lease.borrowedAt)
+                        + "ms by " + lease.owner);
+                lease.borrowSite.printStackTrace();
+            }
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions.get();
+    }
+
+    /**
+     * Closes every idle connection and stops leak detection. Borrowed connections are closed as they are released.
+     */
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Records who borrowed a connection and when.
+     */
+    private static class Lease {
+        final long borrowedAt = System.currentTimeMillis();
+        final String owner = Thread.currentThread().getName();
+        final Throwable borrowSite;
+        volatile boolean reported = false;
+
+        Lease(boolean recordBorrowSite) {
+            borrowSite = recordBorrowSite ? new Throwable("Connection borrowed here") : null;
+        }
+    }
+}
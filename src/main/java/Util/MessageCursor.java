@@ -0,0 +1,55 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import Model.Message;
+
+/**
+ * A keyset pagination cursor pointing at the last message of a page. Clients only ever see it as an opaque string
+ * produced by {@link #encode()}; the next page continues strictly after the (time_posted_epoch, message_id) it holds.
+ */
+public class MessageCursor {
+    private final long time_posted_epoch;
+    private final int message_id;
+
+    public MessageCursor(long time_posted_epoch, int message_id) {
+        this.time_posted_epoch = time_posted_epoch;
+        this.message_id = message_id;
+    }
+
+    /**
+     * @return a cursor positioned at the given message
+     */
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getTime_posted_epoch(), message.getMessage_id());
+    }
+
+    /**
+     * @param cursor a string previously produced by {@link #encode()}
+     * @throws IllegalArgumentException if the string is not a valid cursor
+     */
+    public static MessageCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new MessageCursor(Long.parseLong(decoded.substring(0, separator)),
+                    Integer.parseInt(decoded.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        String raw = time_posted_epoch + ":" + message_id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getTime_posted_epoch() {
+        return time_posted_epoch;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+}
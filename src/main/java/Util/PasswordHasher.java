@@ -0,0 +1,157 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, computed on a dedicated bounded pool so request threads are not held by
+ * the key derivation. Stored hashes look like pbkdf2$iterations$salt$hash with base64 salt and hash, so the work
+ * factor can be raised later: a stored value with fewer iterations than the current setting, or a legacy plaintext
+ * value without the prefix, still verifies and reports that it needs rehashing.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int MIN_ITERATIONS = 10000;
+    /**
+     * Iteration counts already calibrated in this JVM, by target milliseconds.
+     */
+    private static final ConcurrentHashMap<Long, Integer> CALIBRATED = new ConcurrentHashMap<>();
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations PBKDF2 iterations for new hashes
+     * @param threads hashing threads; more than the number of cores only adds queueing inside the pool
+     * @param queueCapacity hashes allowed to wait for a thread before new ones are rejected
+     */
+    public PasswordHasher(int iterations, int threads, int queueCapacity) {
+        this.iterations = Math.max(MIN_ITERATIONS, iterations);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return the number of iterations one hash takes about targetMillis to compute on this machine, measured once
+     * per JVM and target
+     */
+    public static int calibrate(long targetMillis) {
+        return CALIBRATED.computeIfAbsent(targetMillis, target -> {
+            byte[] salt = new byte[SALT_BYTES];
+            int probe = MIN_ITERATIONS;
+            derive("calibration".toCharArray(), salt, probe);
+            long start = System.nanoTime();
+            derive("calibration".toCharArray(), salt, probe);
+            double nanosPerIteration = (double) (System.nanoTime() - start) / probe;
+            return (int) Math.max(MIN_ITERATIONS, TimeUnit.MILLISECONDS.toNanos(target) / nanosPerIteration);
+        });
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing queue is full
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return CompletableFuture.supplyAsync(() -> hash(password), executor);
+    }
+
+    /**
+     * @return a future of whether the password matches the stored value
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing queue is full
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        return CompletableFuture.supplyAsync(() -> verify(password, stored), executor);
+    }
+
+    /**
+     * Computes a new hash on the calling thread.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password.toCharArray(), salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password on the calling thread, in time independent of where the first mismatch is.
+     */
+    public boolean verify(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(parts[3]);
+        byte[] actual = derive(password.toCharArray(), decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * @return true if the stored value is legacy plaintext or was hashed with a different work factor
+     */
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    /**
+     * @return hashes waiting for a thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * SHA-256 of the bytes; cheap, for remembering a verified password, never for storing one.
+     */
+    public static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] derive(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package Util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A size-bounded LRU cache that loads missing values through a loader, with an optional time to live. A null from the
+ * loader means "not found" and is only cached when a negative time to live is given; a loader that cannot tell must
+ * throw instead, and nothing is cached.
+ *
+ * Keys are spread over up to {@value #MAX_SEGMENTS} segments by hash, each an LRU map with its own share of the size
+ * and its own lock, so concurrent lookups of different keys rarely wait for each other; eviction is least recently
+ * used within a segment. Loads run outside every lock, so a slow query never blocks hits. The locks are ReentrantLocks
+ * rather than monitors so virtual threads waiting for one do not pin their carrier threads.
+ *
+ * Concurrent misses on the same key share one load, so a burst of lookups for a key costs one query.
+ *
+ * Invalidation is exact and per key: put and invalidate unregister the key's load in flight, and a load only stores
+ * its value while it is still registered. A value loaded while its key was invalidated is returned to its caller but
+ * not cached, because it may have been read before the write that triggered the invalidation; writes to other keys do
+ * not affect it.
+ */
+public class ReadThroughCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    /**
+     * Fewest entries per segment; a smaller cache has fewer segments, so its eviction order stays close to LRU.
+     */
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Segment<K, V>[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * @param maxSize most entries kept; 0 disables caching so every get goes to the loader
+     * @param ttlMillis how long an entry stays valid after it was loaded; 0 keeps it until it is evicted or invalidated
+     */
+    public ReadThroughCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, 0);
+    }
+
+    /**
+     * @param negativeTtlMillis how long a "not found" stays cached; 0 never caches it
+     */
+    @SuppressWarnings("unchecked")
+    public ReadThroughCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the remainder goes to the first segments so the sizes add up to maxSize
+            segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Picks the segment from bits the segment's own HashMap does not bucket by, so the keys of one segment still spread
+     * over its buckets; Integer keys would otherwise all share their low bits within a segment.
+     */
+    private Segment<K, V> segmentFor(Object key) {
+        int mixed = key.hashCode() * 0x9E3779B9;
+        return segments[(mixed >>> 16) & (segments.length - 1)];
+    }
+
+    /**
+     * @return the cached value for the key, or the loader's value on a miss
+     * @throws RuntimeException whatever the loader threw, to this caller and every caller sharing its load
+     */
+    public V get(K key, Function<K, V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        CompletableFuture<V> load;
+        boolean joined;
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null) {
+                if (isFresh(entry)) {
+                    (entry.value == null ? negativeHits : hits).incrementAndGet();
+                    return entry.value;
+                }
+                segment.entries.remove(key);
+            }
+            CompletableFuture<V> running = segment.loading.get(key);
+            if (running != null) {
+                coalesced.incrementAndGet();
+                load = running;
+                joined = true;
+            } else {
+                load = new CompletableFuture<>();
+                segment.loading.put(key, load);
+                joined = false;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (joined) {
+            try {
+                return load.join();
+            } catch (CompletionException e) {
+                // the leader's load threw; rethrow what it threw
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            segment.lock.lock();
+            try {
+                segment.loading.remove(key, load);
+            } finally {
+                segment.lock.unlock();
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        long loadedAt = System.nanoTime();
+        loads.incrementAndGet();
+        loadNanos.addAndGet(loadedAt - start);
+        segment.lock.lock();
+        try {
+            // still registered unless a put or invalidate of this key came in while it was loading
+            if (segment.loading.remove(key, load) && (value != null || negativeTtlNanos > 0) && segment.maxSize > 0) {
+                segment.entries.put(key, new Entry<>(value, loadedAt));
+                evictOverflow(segment);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        load.complete(value);
+        return value;
+    }
+
+    /**
+     * @return the cached value for the key, or null if there is none; never loads
+     */
+    public V getIfPresent(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null && entry.value != null && isFresh(entry)) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private boolean isFresh(Entry<V> entry) {
+        long ttl = entry.value == null ? negativeTtlNanos : ttlNanos;
+        return ttl == 0 || System.nanoTime() - entry.loadedAt < ttl;
+    }
+
+    /**
+     * Caches a value the caller has just written, replacing any entry for the key including a cached "not found".
+     * Call it after the write has committed.
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.loading.remove(key);
+            if (segment.maxSize > 0) {
+                segment.entries.put(key, new Entry<>(value, System.nanoTime()));
+                evictOverflow(segment);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the entry for the key. Call it after the write that made the entry stale has committed.
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            // lookups from now on must not join, and the load must not store, a value that may predate the write
+            segment.loading.remove(key);
+            segment.entries.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.loading.clear();
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    private void evictOverflow(Segment<K, V> segment) {
+        Iterator<Map.Entry<K, Entry<V>>> eldest = segment.entries.entrySet().iterator();
+        while (segment.entries.size() > segment.maxSize) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return misses that waited for another caller's load of the same key instead of loading it again
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return lookups answered by a cached "not found"
+     */
+    public long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    /**
+     * @return hits, including cached "not found" answers, divided by lookups, or 0 before the first lookup
+     */
+    public double getHitRatio() {
+        long hitCount = hits.get() + negativeHits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return the mean time a load took, in microseconds, or 0 before the first load
+     */
+    public double getAverageLoadMicros() {
+        long loadCount = loads.get();
+        return loadCount == 0 ? 0 : loadNanos.get() / 1000.0 / loadCount;
+    }
+
+    private static class Segment<K, V> {
+        final int maxSize;
+        final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final HashMap<K, CompletableFuture<V>> loading = new HashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Already encoded response bodies keyed by request, each stored with the ETag it was encoded under. An entry is only
+ * served while the caller's current ETag for the request still matches, so the writes that change ETags invalidate
+ * it without touching the cache. Entries are evicted least recently used first once their bodies exceed the byte
+ * budget.
+ */
+public class ResponseCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes total size of the cached bodies above which entries are evicted; 0 disables the cache
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the entry cached for the key under exactly this ETag, or null
+     */
+    public synchronized Entry get(String key, String etag) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.etag.equals(etag)) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a body encoded under the ETag that was current before its data was read. Bodies larger than the whole
+     * budget are not cached.
+     */
+    public synchronized void put(String key, String etag, byte[] body, String nextCursor) {
+        if (body.length > maxBytes) {
+            return;
+        }
+        Entry replaced = entries.put(key, new Entry(etag, body, nextCursor));
+        if (replaced != null) {
+            bytes -= replaced.body.length;
+        }
+        bytes += body.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().body.length;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public static class Entry {
+        private final String etag;
+        private final byte[] body;
+        private final String nextCursor;
+
+        Entry(String etag, byte[] body, String nextCursor) {
+            this.etag = etag;
+            this.body = body;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * @return the encoded body; it is shared by every hit and must not be modified
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the X-Next-Cursor header sent with the body, or null
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
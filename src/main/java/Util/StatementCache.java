@@ -0,0 +1,86 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU cache of prepared statements for one pooled connection, keyed by SQL text. A pooled connection is only ever
+ * used by one thread at a time, so the cache itself is not synchronized. Statements handed out by the cache belong to
+ * it and must not be closed by the caller; the caller only closes the ResultSets it opens.
+ */
+public class StatementCache {
+    private final Connection connection;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private long generation;
+
+    /**
+     * The hit, miss and eviction counters are shared by every cache in the pool so they can be reported together.
+     */
+    StatementCache(Connection connection, int maxSize, long generation,
+                   AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.generation = generation;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @param currentGeneration the pool's cache generation; statements prepared in an older generation are dropped
+     * @return a cached statement for the sql, preparing it on a miss. Its parameters are left from the last use, so
+     * every parameter must be set again.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys, long currentGeneration) throws SQLException {
+        if (generation != currentGeneration) {
+            clear();
+            generation = currentGeneration;
+        }
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+        PreparedStatement ps = statements.get(key);
+        if (ps != null && !ps.isClosed()) {
+            hits.incrementAndGet();
+            return ps;
+        }
+        misses.incrementAndGet();
+        ps = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, ps);
+        if (statements.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+            closeQuietly(eldest.next().getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+        return ps;
+    }
+
+    /**
+     * Closes and forgets every cached statement.
+     */
+    void clear() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
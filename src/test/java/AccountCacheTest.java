@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    private static final int BURST = 100;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpRequest post(String path, String username, String password) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    private Map<String, Object> getMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+
+    /**
+     * Sending a burst of http requests to POST localhost:8080/login for a username that does not exist, then one
+     * more after the first has been answered
+     *
+     * Expected Response:
+     *  Every login gets 401, the whole burst costs one query and the login after it is answered from the cached
+     *  "not found"
+     */
+    @Test
+    public void unknownUsernameBurstIsCached() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < BURST; i++) {
+            responses.add(webClient.sendAsync(post("/login", "nobody", "password"), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(401, response.join().statusCode());
+        }
+        long loadsAfterBurst = ((Number) getMetrics().get("accountCache.loads")).longValue();
+        Assert.assertEquals(1, loadsAfterBurst);
+
+        Assert.assertEquals(401, webClient.send(post("/login", "nobody", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(loadsAfterBurst, ((Number) metrics.get("accountCache.loads")).longValue());
+    }
+
+    /**
+     * Logging in with POST localhost:8080/login as a username that was never registered
+     *
+     * Expected Response:
+     *  Status Code: 401, after one lookup
+     */
+    @Test
+    public void unknownUsernameIsLookedUp() throws IOException, InterruptedException {
+        Assert.assertEquals(401, webClient.send(post("/login", "nobody", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(1, metrics.get("accountCache.misses"));
+    }
+
+    /**
+     * Inserting an account straight into the database after the app started, then logging in as it with POST
+     * localhost:8080/login
+     *
+     * Expected Response:
+     *  Status Code: 200, although this process never registered the account
+     */
+    @Test
+    public void accountCreatedElsewhereCanLogIn() throws Exception {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO account (username, password) VALUES ('elsewhere', 'password')");
+            ps.executeUpdate();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        Assert.assertEquals(200, webClient.send(post("/login", "elsewhere", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Logging in with a username nobody has, registering it with POST localhost:8080/register, then logging in again
+     *
+     * Expected Response:
+     *  The second login succeeds even though "not found" was cached
+     */
+    @Test
+    public void registrationReplacesCachedNotFound() throws IOException, InterruptedException {
+        Assert.assertEquals(401, webClient.send(post("/login", "newuser", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(200, webClient.send(post("/register", "newuser", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(200, webClient.send(post("/login", "newuser", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,100 @@
+package Benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * GET /messages at several table sizes, asking for no compression, gzip or brotli. The score is the time to receive
+ * the whole compressed body over loopback, so it shows the server's CPU cost without the transfer time compression
+ * saves on a real network. The size of that body is printed when the trial starts. The levels come from server.compression.gzipLevel and
+ * server.compression.brotliLevel, so pass -jvmArgs to compare them.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=CompressionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+public class CompressionBenchmark {
+    private static final int PORT = 8095;
+
+    @Param({"identity", "gzip", "br"})
+    public String encoding;
+
+    @Param({"10", "1000", "100000"})
+    public int messages;
+
+    private Javalin app;
+    private HttpClient webClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection,
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < messages; i++) {
+                ps.setString(1, "benchmark message number " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        webClient = HttpClient.newHttpClient();
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages"))
+                .header("Accept-Encoding", encoding)
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        System.out.println("wire bytes: " + response.body().length + " Content-Encoding: "
+                + response.headers().firstValue("Content-Encoding").orElse("none"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public long fullResponse() throws Exception {
+        HttpResponse<InputStream> response = webClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
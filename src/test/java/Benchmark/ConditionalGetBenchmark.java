@@ -0,0 +1,108 @@
+package Benchmark;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * A polling client that re-reads an unchanged resource: unconditional sends a plain GET and downloads the body every
+ * time, as clients did before ETags; conditional sends If-None-Match with the tag of its last response and gets 304.
+ * responseCacheBytes 0 turns off the encoded response cache, so unconditional reads serialize every time; add -prof gc
+ * to compare the allocation per read.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ConditionalGetBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class ConditionalGetBenchmark {
+    private static final int PORT = 8091;
+    private static final int MESSAGES = 1000;
+
+    @Param({"/messages/1", "/messages?limit=100"})
+    public String path;
+
+    @Param({"8388608", "0"})
+    public String responseCacheBytes;
+
+    private Javalin app;
+    private HttpClient webClient;
+    private HttpRequest unconditional;
+    private HttpRequest conditional;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection,
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < MESSAGES; i++) {
+                ps.setString(1, "benchmark message number " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        System.setProperty("messages.responseCache.maxBytes", responseCacheBytes);
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        webClient = HttpClient.newHttpClient();
+        unconditional = HttpRequest.newBuilder().uri(URI.create("http://localhost:" + PORT + path)).build();
+        String etag = webClient.send(unconditional, HttpResponse.BodyHandlers.discarding())
+                .headers().firstValue("ETag").orElseThrow();
+        conditional = HttpRequest.newBuilder().uri(URI.create("http://localhost:" + PORT + path))
+                .header("If-None-Match", etag).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.responseCache.maxBytes");
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public long unconditional() throws Exception {
+        return webClient.send(unconditional, HttpResponse.BodyHandlers.ofInputStream()).body()
+                .transferTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public int conditional() throws Exception {
+        HttpResponse<Void> response = webClient.send(conditional, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 304) {
+            throw new IllegalStateException("expected 304, got " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
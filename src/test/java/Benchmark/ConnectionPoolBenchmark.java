@@ -0,0 +1,90 @@
+package Benchmark;
+
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.RunScript;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.ConnectionPool;
+
+/**
+ * Measures message lookups per second from 16 concurrent threads while varying the pool size. A pool size of 1 is
+ * equivalent to the old single shared connection, so throughput should rise with the pool size until it reaches the
+ * number of cores.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ConnectionPoolBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class ConnectionPoolBenchmark {
+    private static final int MESSAGES = 10_000;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int poolSize;
+
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:pool_bench;DB_CLOSE_DELAY=-1", "sa", "sa",
+                poolSize, poolSize, 30_000, 1, 0, 16);
+        Connection connection = pool.borrow();
+        try {
+            RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < MESSAGES; i++) {
+                ps.setString(1, "benchmark message " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            ps.close();
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public String lookupMessage() throws SQLException {
+        Connection connection = pool.borrow();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT message_text FROM message WHERE message_id = ?")) {
+            ps.setInt(1, ThreadLocalRandom.current().nextInt(1, MESSAGES + 1));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } finally {
+            pool.release(connection);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * Throughput of MessageService.newMessage under many concurrent writers, inserting each message synchronously versus
+ * handing it to the group-commit ingest queue.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=IngestBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(32)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class IngestBenchmark {
+
+    @Param({"sync", "queue"})
+    public String mode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.ingest.mode", mode);
+        new AccountService(new AccountDAO());
+        new MessageService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.clearProperty("messages.ingest.mode");
+        new MessageService();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public Message newMessage() {
+        return MessageService.newMessage(new Message(1, "written by the ingest benchmark", 1669947792));
+    }
+}
@@ -0,0 +1,63 @@
+package Benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonCodec;
+
+/**
+ * The JSON work of one POST /messages: read the request body into a Message and write the saved Message back.
+ * "perRequest" is what the handlers did before, a new ObjectMapper per request; "shared" and "blackbird" use
+ * JsonCodec's pre-bound reader and writer, with reflective and generated property access. Add -prof gc for the
+ * allocation per request.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=JsonCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class JsonCodecBenchmark {
+    private static final byte[] BODY = ("{\"posted_by\":1,\"message_text\":\"hello from the json codec benchmark\","
+            + "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"perRequest", "shared", "blackbird"})
+    public String codec;
+
+    private JsonCodec json;
+
+    @Setup
+    public void setUp() {
+        json = new JsonCodec("blackbird".equals(codec));
+    }
+
+    @Benchmark
+    public byte[] readAndWriteMessage() throws Exception {
+        if ("perRequest".equals(codec)) {
+            ObjectMapper mapper = new ObjectMapper();
+            Message message = mapper.readValue(BODY, Message.class);
+            message.setMessage_id(1);
+            return mapper.writeValueAsBytes(message);
+        }
+        Message message = json.readMessage(BODY);
+        message.setMessage_id(1);
+        return json.writeBytes(message);
+    }
+}
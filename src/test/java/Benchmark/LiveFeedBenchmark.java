@@ -0,0 +1,115 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Time from creating one message until every one of subscribers Server-Sent Events clients has read it. The clients
+ * are real connections over loopback in this JVM, so this needs two file descriptors per subscriber: raise ulimit -n
+ * above 2 * subscribers or lower subscribers with -p. The message is saved through MessageService directly, so the
+ * score is one insert plus the fan-out.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=LiveFeedBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+public class LiveFeedBenchmark {
+    private static final int PORT = 8097;
+
+    @Param({"100", "1000", "5000"})
+    public int subscribers;
+
+    private final AtomicLong received = new AtomicLong();
+    private Javalin app;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        HttpClient webClient = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages/live"))
+                .header("Accept", "text/event-stream")
+                .build();
+        for (int i = 0; i < subscribers; i++) {
+            webClient.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new DataLineCounter()));
+        }
+        while (MessageService.getBroadcaster().getSubscriberCount() < subscribers) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        message = new Message(1, "live benchmark message", 1669947793L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public long createAndFanOut() {
+        long target = received.get() + subscribers;
+        MessageService.newMessage(message);
+        while (received.get() < target) {
+            LockSupport.parkNanos(20_000);
+        }
+        return target;
+    }
+
+    /**
+     * Counts the data lines of one subscriber's event stream into received.
+     */
+    private class DataLineCounter implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:")) {
+                received.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+/**
+ * Login throughput at different PBKDF2 work factors, with the verified-login cache off (every login runs the key
+ * derivation) and on (repeat logins are checked against the cached digest). wrongPassword guesses the password of the
+ * same, recently verified account; the cache must not speed it up, so it should match login with the cache off.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=LoginBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class LoginBenchmark {
+
+    @Param({"10000", "100000", "600000"})
+    public String iterations;
+
+    @Param({"0", "10000"})
+    public String verifiedCacheSize;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("accounts.password.iterations", iterations);
+        System.setProperty("accounts.password.verifiedCacheSize", verifiedCacheSize);
+        new AccountService(new AccountDAO());
+        AccountService.registerAccount(new Account("benchmark", "benchmark password")).join();
+        // a verified login, cached when the cache is on
+        AccountService.userLogin("benchmark", "benchmark password").join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.clearProperty("accounts.password.iterations");
+        System.clearProperty("accounts.password.verifiedCacheSize");
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public Account login() {
+        return AccountService.userLogin("benchmark", "benchmark password").join();
+    }
+
+    @Benchmark
+    public Account wrongPassword() {
+        return AccountService.userLogin("benchmark", "wrong password").join();
+    }
+}
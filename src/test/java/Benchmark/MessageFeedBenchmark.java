@@ -0,0 +1,78 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * Reader throughput of the full message feed (MessageService.forEachMessage) from the database versus the in-memory
+ * snapshot. Threads defaults to one per core; override it with -t to see how each mode scales.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=MessageFeedBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(Threads.MAX)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class MessageFeedBenchmark {
+
+    @Param({"database", "snapshot"})
+    public String mode;
+
+    @Param({"10000"})
+    public int messages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection,
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < messages; i++) {
+                ps.setString(1, "benchmark message number " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        System.setProperty("messages.feed.mode", mode);
+        new MessageService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.clearProperty("messages.feed.mode");
+        new MessageService();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public void readFeed(Blackhole blackhole) {
+        MessageService.forEachMessage(blackhole::consume);
+    }
+}
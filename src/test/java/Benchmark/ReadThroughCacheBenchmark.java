@@ -0,0 +1,68 @@
+package Benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.ReadThroughCache;
+
+/**
+ * Lookups per second from 16 threads on a ReadThroughCache of 10,000 entries, with keys drawn from keyCount keys with
+ * a heavy skew, so most lookups hit a few hundred hot keys and the rest keep the eviction pass busy; the larger key
+ * space misses more often. The loader does no I/O,
+ * so the numbers are the cache's own overhead and contention. Add `-t` to vary the thread count.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ReadThroughCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class ReadThroughCacheBenchmark {
+    private static final int SAMPLES = 1 << 16;
+
+    private final ReadThroughCache<Integer, Integer> cache = new ReadThroughCache<>(10_000, 0);
+
+    @State(Scope.Thread)
+    public static class Keys {
+        @Param({"20000", "100000"})
+        public int keyCount;
+
+        final int[] keys = new int[SAMPLES];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(Thread.currentThread().getId());
+            for (int i = 0; i < SAMPLES; i++) {
+                keys[i] = (int) (keyCount * Math.pow(random.nextDouble(), 4));
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (SAMPLES - 1);
+            return keys[next];
+        }
+    }
+
+    @Benchmark
+    public Integer get(Keys keys) {
+        return cache.get(keys.next(), key -> key);
+    }
+}
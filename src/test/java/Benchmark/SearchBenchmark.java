@@ -0,0 +1,114 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * Latency of one search for the newest 20 matches, through the inverted index versus a LIKE scan of the message table.
+ * Message texts are eight words drawn from a skewed vocabulary of 1000, so "w1" is common and "w900" rare. The LIKE
+ * query matches substrings rather than whole words and is only a baseline for what the index replaces.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=SearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class SearchBenchmark {
+    private static final int LIMIT = 20;
+
+    @Param({"w1", "w900", "w1 w2", "w1 w900", "w9*"})
+    public String query;
+
+    @Param({"100000"})
+    public int messages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Random random = new Random(42);
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection,
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < messages; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int w = 0; w < 8; w++) {
+                    double skewed = Math.pow(random.nextDouble(), 3);
+                    text.append(w == 0 ? "" : " ").append('w').append((int) (skewed * 1000));
+                }
+                ps.setString(1, text.toString());
+                ps.setLong(2, 1669947792L + random.nextInt(messages));
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        new MessageService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ConnectionUtil.resetTestDatabase();
+        new MessageService();
+    }
+
+    @Benchmark
+    public List<Integer> index() {
+        return MessageService.getSearchIndex().search(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<Integer> likeScan() throws Exception {
+        String[] terms = query.replace("*", "").split(" ");
+        StringBuilder sql = new StringBuilder("SELECT message_id FROM message WHERE 1 = 1");
+        for (int i = 0; i < terms.length; i++) {
+            sql.append(" AND LOWER(message_text) LIKE ?");
+        }
+        sql.append(" ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ").append(LIMIT);
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, sql.toString());
+            for (int i = 0; i < terms.length; i++) {
+                ps.setString(i + 1, "%" + terms[i] + "%");
+            }
+            List<Integer> ids = new ArrayList<>(LIMIT);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+            return ids;
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+}
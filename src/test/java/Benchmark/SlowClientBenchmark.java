@@ -0,0 +1,174 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Time for many slow clients to each POST one message. Every client sends its headers with Expect: 100-continue and
+ * only sends the body bodyDelayMillis after the server asks for it, which is when a request thread starts reading
+ * it, so each request holds whatever thread runs it for that long. On platform threads at most server.maxThreads
+ * requests make progress at once; on virtual threads all of them do. One selector thread drives every client, so the
+ * client side needs no threads of its own.
+ *
+ * virtual needs JDK 21 (build with -Pjdk21); on older JDKs it falls back to platform threads and measures the same.
+ * Client and server share this JVM, so it needs two file descriptors per client: raise ulimit -n above 2 * clients or
+ * lower clients with -p.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=SlowClientBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class SlowClientBenchmark {
+    private static final int PORT = 8093;
+    private static final byte[] BODY = ("{\"posted_by\":1,\"message_text\":\"from a slow client\","
+            + "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADERS = ("POST /messages HTTP/1.1\r\nHost: localhost\r\n"
+            + "Content-Type: application/json\r\nContent-Length: " + BODY.length + "\r\n"
+            + "Expect: 100-continue\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"10000"})
+    public int clients;
+
+    @Param({"200"})
+    public long bodyDelayMillis;
+
+    private Javalin app;
+    private List<SocketChannel> channels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("server.threads", threads);
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("server.threads");
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Connects every client before the measurement, so it only covers the requests.
+     */
+    @Setup(Level.Invocation)
+    public void connect() throws IOException, InterruptedException {
+        channels = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+            channel.configureBlocking(false);
+            channels.add(channel);
+            // Jetty listens with the JDK's default backlog of 50; connecting faster than it accepts overflows it
+            if (i % 20 == 19) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /**
+     * Requests answered 200, and requests closed without one.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public int answered;
+        public int dropped;
+    }
+
+    /**
+     * @return the number of requests answered 200
+     */
+    @Benchmark
+    public int postFromSlowClients(Counters counters) throws IOException {
+        Selector selector = Selector.open();
+        for (SocketChannel channel : channels) {
+            channel.write(ByteBuffer.wrap(HEADERS));
+            channel.register(selector, SelectionKey.OP_READ, new Client());
+        }
+        ArrayDeque<SelectionKey> waiting = new ArrayDeque<>();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int open = channels.size();
+        int ok = 0;
+        while (open > 0) {
+            // clients become ready to send in the order they were asked, so the head is always due first
+            long now = System.nanoTime();
+            while (!waiting.isEmpty() && ((Client) waiting.peek().attachment()).sendAt <= now) {
+                SelectionKey key = waiting.poll();
+                ((SocketChannel) key.channel()).write(ByteBuffer.wrap(BODY));
+            }
+            long waitMillis = waiting.isEmpty() ? 100
+                    : Math.max(1, TimeUnit.NANOSECONDS.toMillis(((Client) waiting.peek().attachment()).sendAt - now));
+            selector.select(waitMillis);
+            for (SelectionKey key : selector.selectedKeys()) {
+                SocketChannel channel = (SocketChannel) key.channel();
+                Client client = (Client) key.attachment();
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read > 0) {
+                    client.response.append(new String(buffer.array(), 0, read, StandardCharsets.US_ASCII));
+                }
+                if (!client.asked && client.response.indexOf("100 Continue\r\n\r\n") >= 0) {
+                    client.asked = true;
+                    client.response.setLength(0);
+                    client.sendAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(bodyDelayMillis);
+                    waiting.add(key);
+                } else if (read < 0) {
+                    if (client.response.indexOf("HTTP/1.1 200") == 0) {
+                        ok++;
+                    }
+                    key.cancel();
+                    channel.close();
+                    open--;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        selector.close();
+        counters.answered += ok;
+        counters.dropped += clients - ok;
+        return ok;
+    }
+
+    private static class Client {
+        final StringBuilder response = new StringBuilder();
+        boolean asked;
+        long sendAt;
+    }
+}
@@ -0,0 +1,129 @@
+package Benchmark;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Latency of a request that needs no query, a conditional GET /messages/1 answered 304, while slowClients background
+ * threads keep reading the whole message table. With dbThreads=0 the queries run on Jetty's request threads, so the
+ * slow reads hold all server.maxThreads of them and the 304 waits in Jetty's queue behind them; with a database
+ * executor the request threads only hand the reads over and stay free for it.
+ *
+ * Run each dbThreads in its own JVM: the server reads its properties once.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=SlowQueryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+public class SlowQueryBenchmark {
+    private static final int PORT = 8094;
+
+    @Param({"0", "10"})
+    public int dbThreads;
+
+    @Param({"32"})
+    public int slowClients;
+
+    @Param({"20000"})
+    public int messages;
+
+    private Javalin app;
+    private HttpClient webClient;
+    private HttpRequest notModified;
+    private List<Thread> background;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("server.maxThreads", "16");
+        System.setProperty("db.executor.threads", Integer.toString(dbThreads));
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection,
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 0; i < messages; i++) {
+                ps.setString(1, "benchmark message number " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        webClient = HttpClient.newHttpClient();
+        URI message = URI.create("http://localhost:" + PORT + "/messages/1");
+        String etag = webClient.send(HttpRequest.newBuilder().uri(message).build(),
+                HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").orElseThrow();
+        notModified = HttpRequest.newBuilder().uri(message).header("If-None-Match", etag).build();
+
+        HttpRequest slowRead = HttpRequest.newBuilder().uri(URI.create("http://localhost:" + PORT + "/messages")).build();
+        running = true;
+        background = new ArrayList<>();
+        for (int i = 0; i < slowClients; i++) {
+            Thread thread = new Thread(() -> {
+                while (running) {
+                    try {
+                        webClient.send(slowRead, HttpResponse.BodyHandlers.ofInputStream()).body()
+                                .transferTo(OutputStream.nullOutputStream());
+                    } catch (Exception e) {
+                        // a read cut short by the shutdown
+                    }
+                }
+            }, "slow-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            background.add(thread);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : background) {
+            thread.join();
+        }
+        app.stop();
+        System.clearProperty("server.maxThreads");
+        System.clearProperty("db.executor.threads");
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public int conditionalGet() throws Exception {
+        return webClient.send(notModified, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,74 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Reads the newest 20 messages of a random account while the message table grows from 10 thousand to 1 million rows
+ * spread over 1000 accounts. With the (posted_by, time_posted_epoch DESC, message_id DESC) index the latency should
+ * stay close to flat as the table grows.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=TimelineBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class TimelineBenchmark {
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int messages;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO account (username, password) "
+                    + "SELECT 'bench' || X, 'password' FROM SYSTEM_RANGE(1, " + ACCOUNTS + ")");
+            statement.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(X, " + ACCOUNTS + ") + 1, 'benchmark message ' || X, 1669947792 + X "
+                    + "FROM SYSTEM_RANGE(1, " + messages + ")");
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        messageDAO = new MessageDAO();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public List<Message> newestTwenty() {
+        int account = ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1);
+        return messageDAO.getTimeline(account, null, null, null, 20);
+    }
+}
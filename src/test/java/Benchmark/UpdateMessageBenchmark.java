@@ -0,0 +1,90 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Latency of one PATCH worth of database work. threeRoundTrips replays the former read, update, read-back sequence;
+ * singleStatement is the current MessageDAO.updateByMessageId using UPDATE inside FINAL TABLE.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=UpdateMessageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class UpdateMessageBenchmark {
+    private static final String SELECT = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
+    private static final String UPDATE = "UPDATE Message SET message_text = ? WHERE message_id = ?;";
+
+    private MessageDAO messageDAO;
+    private Message update;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        update = new Message();
+        update.setMessage_text("updated by the benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @Benchmark
+    public Message singleStatement() {
+        return messageDAO.updateByMessageId(update, 1);
+    }
+
+    @Benchmark
+    public Message threeRoundTrips() throws SQLException {
+        readMessage(1);
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, UPDATE);
+            ps.setString(1, update.getMessage_text());
+            ps.setInt(2, 1);
+            ps.executeUpdate();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        return readMessage(1);
+    }
+
+    private Message readMessage(int message_id) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = ConnectionUtil.prepareStatement(connection, SELECT);
+            ps.setInt(1, message_id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)) : null;
+            }
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+}
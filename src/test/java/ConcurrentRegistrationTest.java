@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConcurrentRegistrationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    private static final int USERNAMES = 20;
+    private static final int ATTEMPTS_PER_USERNAME = 10;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending many concurrent http requests to POST localhost:8080/register, several for each username
+     *
+     * Expected Response:
+     *  Exactly one 200 per username, carrying a distinct generated account_id; every other attempt gets 400
+     */
+    @Test
+    public void registerSameUsernamesConcurrently() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int attempt = 0; attempt < ATTEMPTS_PER_USERNAME; attempt++) {
+            for (int user = 0; user < USERNAMES; user++) {
+                HttpRequest postRequest = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/register"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{" +
+                                "\"username\": \"user" + user + "\", " +
+                                "\"password\": \"password\" }"))
+                        .header("Content-Type", "application/json")
+                        .build();
+                responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+            }
+        }
+
+        Map<String, Integer> successes = new HashMap<>();
+        Set<Integer> ids = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response = future.join();
+            if (response.statusCode() == 200) {
+                Account account = objectMapper.readValue(response.body(), Account.class);
+                successes.merge(account.getUsername(), 1, Integer::sum);
+                Assert.assertTrue("duplicate id " + account.getAccount_id(), ids.add(account.getAccount_id()));
+            } else {
+                Assert.assertEquals(400, response.statusCode());
+                Assert.assertEquals("", response.body());
+            }
+        }
+
+        Assert.assertEquals(USERNAMES, successes.size());
+        for (int count : successes.values()) {
+            Assert.assertEquals(1, count);
+        }
+        for (int id : ids) {
+            Assert.assertTrue(id > 1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String etag) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 again with the ETag of the first response, then again after PATCH
+     *
+     * Expected Response:
+     *  304 with an empty body while the message is unchanged, 200 with the new text after the update
+     */
+    @Test
+    public void getMessageNotModifiedUntilUpdated() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> repeated = get("/messages/1", etag);
+        Assert.assertEquals(304, repeated.statusCode());
+        Assert.assertEquals("", repeated.body());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> afterUpdate = get("/messages/1", etag);
+        Assert.assertEquals(200, afterUpdate.statusCode());
+        Assert.assertTrue(afterUpdate.body().contains("updated message"));
+        Assert.assertNotEquals(etag, afterUpdate.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages again with the ETag of the first response, then again after POST
+     *
+     * Expected Response:
+     *  304 while no message changed, 200 once a message was created
+     */
+    @Test
+    public void getAllMessagesNotModifiedUntilCreated() throws IOException, InterruptedException {
+        String etag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, get("/messages", etag).statusCode());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> afterCreate = get("/messages", etag);
+        Assert.assertEquals(200, afterCreate.statusCode());
+        Assert.assertTrue(afterCreate.body().contains("hello message"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/{message_id} with If-None-Match: * for a missing and an existing message
+     *
+     * Expected Response:
+     *  200 with an empty body for the missing message, 304 for the existing one, also once its body is cached
+     */
+    @Test
+    public void wildcardOnlyMatchesExistingMessage() throws IOException, InterruptedException {
+        HttpResponse<String> missing = get("/messages/100", "*");
+        Assert.assertEquals(200, missing.statusCode());
+        Assert.assertEquals("", missing.body());
+
+        Assert.assertEquals(304, get("/messages/1", "*").statusCode());
+        Assert.assertEquals(200, get("/messages/1", null).statusCode());
+        Assert.assertEquals(304, get("/messages/1", "*").statusCode());
+    }
+}
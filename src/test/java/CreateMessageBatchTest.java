@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    private static final String MIXED_BATCH = "[" +
+            "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947793}," +
+            "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947794}," +
+            "{\"posted_by\":3, \"message_text\": \"no such user\", \"time_posted_epoch\": 1669947795}," +
+            "{\"posted_by\":1, \"message_text\": \"last\", \"time_posted_epoch\": 1669947796}]";
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> postBatch(String uri, String body) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a mix of valid and invalid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message in order; the valid ones carry their generated ids
+     */
+    @Test
+    public void createMessageBatchPartialSuccess() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("http://localhost:8080/messages/batch", MIXED_BATCH);
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(Integer.valueOf(2), results.get(0).getMessage_id());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertNotNull(results.get(3).getMessage_id());
+
+        List<Message> messages = getAllMessages();
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947793), messages.get(1));
+        Assert.assertEquals("last", messages.get(2).getMessage_text());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch?atomic=true with an invalid message in the batch
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: one result per message; nothing is saved
+     */
+    @Test
+    public void createMessageBatchAllOrNothing() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("http://localhost:8080/messages/batch?atomic=true", MIXED_BATCH);
+        Assert.assertEquals(400, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        for (MessageBatchResult result : results) {
+            Assert.assertNull(result.getMessage_id());
+        }
+        Assert.assertEquals(1, getAllMessages().size());
+    }
+}
@@ -3,6 +3,8 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -148,5 +150,36 @@ public class CreateMessageTest {
         Assert.assertEquals("", response.body().toString());
     }
 
+    /**
+     * Sending an http request to POST localhost:8080/messages as an account inserted straight into the database after
+     * the app started
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message object
+     */
+    @Test
+    public void createMessageUserAddedOutsideApi() throws IOException, InterruptedException, SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.prepareStatement("INSERT INTO account (username, password) VALUES ('elsewhere', 'password')")
+                    .executeUpdate();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":2, " +
+                        "\"message_text\": \"message test\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
 
+        Assert.assertEquals(200, status);
+        Message actualResult = new ObjectMapper().readValue(response.body().toString(), Message.class);
+        Assert.assertEquals(new Message(2, 2, "message test", 1669947792), actualResult);
+    }
 }
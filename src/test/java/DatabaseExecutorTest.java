@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class DatabaseExecutorTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a database executor of one worker and one
+     * queue slot, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("db.executor.threads", "1");
+        System.setProperty("db.executor.queueCapacity", "1");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("db.executor.threads");
+        System.clearProperty("db.executor.queueCapacity");
+    }
+
+    private Map<String, Object> getMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+
+    /**
+     * Reading message 1 with GET localhost:8080/messages/1, then reading the metrics
+     *
+     * Expected Response:
+     *  The read is answered from the database executor, which reports one completed task and an empty queue
+     */
+    @Test
+    public void readRunsOnDatabaseExecutor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("\"message_id\":1"));
+
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(1, metrics.get("dbExecutor.threads"));
+        Assert.assertEquals(1, metrics.get("dbExecutor.completed"));
+        Assert.assertEquals(0, metrics.get("dbExecutor.queueDepth"));
+        Assert.assertEquals(0, metrics.get("dbExecutor.rejected"));
+    }
+
+    /**
+     * Sending 50 GET localhost:8080/messages at once to an executor with one worker and one queue slot
+     *
+     * Expected Response:
+     *  Every request is answered 200 or, once the queue is full, 503, and the 503s match the rejections reported
+     */
+    @Test
+    public void fullQueueAnswersServiceUnavailable() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        int unavailable = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            int status = response.join().statusCode();
+            Assert.assertTrue("unexpected status " + status, status == 200 || status == 503);
+            if (status == 503) {
+                unavailable++;
+            }
+        }
+
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(unavailable, metrics.get("dbExecutor.rejected"));
+        Assert.assertEquals(50 - unavailable, metrics.get("dbExecutor.completed"));
+    }
+}
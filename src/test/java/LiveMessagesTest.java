@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageBroadcaster;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LiveMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with live buffers of two events, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.live.bufferSize", "2");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.live.bufferSize");
+    }
+
+    private Map<String, Object> getMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+
+    private void awaitSubscribers(int subscribers) throws IOException, InterruptedException {
+        while (!Integer.valueOf(subscribers).equals(getMetrics().get("live.subscribers"))) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Iterator<String> subscribe(String query) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/live" + query))
+                .header("Accept", "text/event-stream")
+                .build();
+        Stream<String> lines = webClient.sendAsync(request, HttpResponse.BodyHandlers.ofLines()).join().body();
+        return lines.filter(line -> line.startsWith("event:") || line.startsWith("data:")).iterator();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/live, then creating, updating and deleting a message
+     *
+     * Expected Response:
+     *  The stream carries a created, an updated and a deleted event, each with the message as its data
+     */
+    @Test(timeout = 20000)
+    public void writesAreStreamed() throws IOException, InterruptedException {
+        Iterator<String> events = subscribe("");
+        awaitSubscribers(1);
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"live message\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals("event: created", events.next());
+        Assert.assertEquals("data: {\"message_id\":2,\"posted_by\":1,\"message_text\":\"live message\","
+                + "\"time_posted_epoch\":1669947793}", events.next());
+
+        send("PATCH", "/messages/2", "{\"message_text\":\"edited\"}");
+        Assert.assertEquals("event: updated", events.next());
+        Assert.assertTrue(events.next().contains("\"message_text\":\"edited\""));
+
+        send("DELETE", "/messages/2", null);
+        Assert.assertEquals("event: deleted", events.next());
+        Assert.assertTrue(events.next().contains("\"message_id\":2"));
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/live?posted_by=2, then posting as account 1 and as account 2
+     *
+     * Expected Response:
+     *  The first event on the stream is account 2's message
+     */
+    @Test(timeout = 20000)
+    public void postedByFiltersEvents() throws IOException, InterruptedException {
+        Iterator<String> events = subscribe("?posted_by=2");
+        awaitSubscribers(1);
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"not for you\",\"time_posted_epoch\":1669947793}");
+        send("POST", "/register", "{\"username\":\"second\",\"password\":\"password\"}");
+        send("POST", "/messages", "{\"posted_by\":2,\"message_text\":\"for you\",\"time_posted_epoch\":1669947794}");
+
+        Assert.assertEquals("event: created", events.next());
+        Assert.assertTrue(events.next().contains("\"message_text\":\"for you\""));
+    }
+
+    /**
+     * Connecting a WebSocket to ws://localhost:8080/messages/live, then posting a message
+     *
+     * Expected Response:
+     *  A text frame with type created and the message
+     */
+    @Test(timeout = 20000)
+    public void writesAreSentOverWebSocket() throws Exception {
+        CompletableFuture<String> frame = new CompletableFuture<>();
+        WebSocket socket = webClient.newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:8080/messages/live"), new WebSocket.Listener() {
+                    @Override
+                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                        frame.complete(data.toString());
+                        return null;
+                    }
+                }).join();
+        awaitSubscribers(1);
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"over a socket\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals("{\"type\":\"created\",\"message\":{\"message_id\":2,\"posted_by\":1,"
+                + "\"message_text\":\"over a socket\",\"time_posted_epoch\":1669947793}}", frame.get(5, TimeUnit.SECONDS));
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+        awaitSubscribers(0);
+    }
+
+    /**
+     * Subscribing with a buffer of two events, then posting a batch of 50 messages at once
+     *
+     * Expected Response:
+     *  The subscriber falls behind, is disconnected and reported as evicted
+     */
+    @Test(timeout = 20000)
+    public void slowSubscriberIsEvicted() throws IOException, InterruptedException {
+        Iterator<String> events = subscribe("");
+        awaitSubscribers(1);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"burst ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947793}");
+        }
+        batch.append("]");
+        Assert.assertEquals(200, send("POST", "/messages/batch", batch.toString()).statusCode());
+
+        // the stream ends once the server drops the subscriber
+        while (events.hasNext()) {
+            events.next();
+        }
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(0, metrics.get("live.subscribers"));
+        Assert.assertEquals(1, metrics.get("live.evicted"));
+    }
+
+    /**
+     * Subscribing with a buffer of two events and reading the whole response, then posting a batch of 50 messages
+     *
+     * Expected Response:
+     *  The server ends the evicted subscriber's response normally after its last write: the body completes without
+     *  an error and holds only whole events
+     */
+    @Test(timeout = 20000)
+    public void evictedStreamEndsCleanly() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/live"))
+                .header("Accept", "text/event-stream")
+                .build();
+        CompletableFuture<HttpResponse<String>> response = webClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofString());
+        awaitSubscribers(1);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"burst ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947793}");
+        }
+        batch.append("]");
+        Assert.assertEquals(200, send("POST", "/messages/batch", batch.toString()).statusCode());
+
+        // an aborted response would fail the future instead
+        String body = response.join().body();
+        Assert.assertTrue(body.isEmpty() || body.endsWith("\n\n"));
+        for (String event : body.split("\n\n")) {
+            if (!event.isEmpty()) {
+                Assert.assertTrue(event, event.matches("event: created\ndata: \\{.*\"message_text\":\"burst \\d+\".*\\}"));
+            }
+        }
+        Assert.assertEquals(1, getMetrics().get("live.evicted"));
+    }
+
+    /**
+     * A connection whose writes complete at once and are recorded, or stay pending when stalled.
+     */
+    private static class TestConnection implements MessageBroadcaster.Connection {
+        final boolean stalled;
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> pending = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        final CompletableFuture<Void> aborted = new CompletableFuture<>();
+
+        TestConnection(boolean stalled) {
+            this.stalled = stalled;
+        }
+
+        @Override
+        public CompletableFuture<Void> send(String type, String json) {
+            if (stalled) {
+                CompletableFuture<Void> write = new CompletableFuture<>();
+                pending.add(write);
+                return write;
+            }
+            received.add(json);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> heartbeat() {
+            return send(null, null);
+        }
+
+        @Override
+        public void close() {
+            closed.complete(null);
+        }
+
+        @Override
+        public void abort() {
+            aborted.complete(null);
+        }
+    }
+
+    /**
+     * Publishing two messages to a client that stopped reading and a healthy one, sharing a single sender thread
+     *
+     * Expected Response:
+     *  The healthy client receives both at once; the stalled one is aborted once its write times out and counted as
+     *  evicted
+     */
+    @Test(timeout = 20000)
+    public void stalledSubscriberDoesNotHoldSender() throws Exception {
+        MessageBroadcaster live = new MessageBroadcaster(Message::getMessage_text, 16, 1, 200, 0);
+        try {
+            TestConnection stalled = new TestConnection(true);
+            TestConnection healthy = new TestConnection(false);
+            live.subscribe(null, stalled);
+            live.subscribe(null, healthy);
+
+            live.publish("created", new Message(1, 1, "first", 1669947793L));
+            live.publish("created", new Message(2, 1, "second", 1669947794L));
+            while (healthy.received.size() < 2) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(List.of("first", "second"), healthy.received);
+
+            stalled.aborted.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, live.getEvictedCount());
+            Assert.assertEquals(1, live.getSubscriberCount());
+        } finally {
+            live.shutdown();
+        }
+    }
+
+    /**
+     * Cancelling a subscription, as a disconnecting client does, while a write to it is still pending, then letting
+     * the write finish
+     *
+     * Expected Response:
+     *  The subscriber is removed and its connection is neither closed nor aborted
+     */
+    @Test(timeout = 20000)
+    public void cancelLeavesConnectionAlone() throws Exception {
+        MessageBroadcaster live = new MessageBroadcaster(Message::getMessage_text, 16, 1, 10000, 0);
+        try {
+            TestConnection connection = new TestConnection(true);
+            MessageBroadcaster.Subscription subscription = live.subscribe(null, connection);
+            live.publish("created", new Message(1, 1, "first", 1669947793L));
+            while (connection.pending.isEmpty()) {
+                Thread.sleep(10);
+            }
+
+            subscription.cancel();
+            connection.pending.get(0).complete(null);
+            Thread.sleep(200);
+            Assert.assertEquals(0, live.getSubscriberCount());
+            Assert.assertFalse(connection.closed.isDone());
+            Assert.assertFalse(connection.aborted.isDone());
+        } finally {
+            live.shutdown();
+        }
+    }
+}
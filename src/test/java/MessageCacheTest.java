@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> getMessage(int message_id) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + message_id))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Map<String, Object> getMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+
+    /**
+     * Reading message 1 twice, then updating it with PATCH localhost:8080/messages/1 and reading it again
+     *
+     * Expected Response:
+     *  The second read is served from cache without a query, and the read after the update returns the new text
+     */
+    @Test
+    public void updateInvalidatesCachedMessage() throws IOException, InterruptedException {
+        getMessage(1);
+        getMessage(1);
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(1, metrics.get("messageCache.loads"));
+        Assert.assertEquals(1, metrics.get("responseCache.hits"));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message actual = objectMapper.readValue(getMessage(1).body(), Message.class);
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), actual);
+    }
+
+    /**
+     * Reading message 1, deleting it with DELETE localhost:8080/messages/1 and reading it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty, the deleted message is not served from the cache
+     */
+    @Test
+    public void deleteInvalidatesCachedMessage() throws IOException, InterruptedException {
+        Assert.assertNotEquals("", getMessage(1).body());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = getMessage(1);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    private List<Message> getAccountMessages(int account_id) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Reading account 1's messages, then posting, updating and deleting messages and reading them again after each
+     *
+     * Expected Response:
+     *  Every read reflects the write before it; only the first read loads the timeline, and every write is applied
+     *  to the cached timeline so the reads after them are served from it
+     */
+    @Test
+    public void writesMaintainCachedTimeline() throws IOException, InterruptedException {
+        Assert.assertEquals(1, getAccountMessages(1).size());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"newer message\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(2, 1, "newer message", 1669947800), getAccountMessages(1).get(0));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), getAccountMessages(1).get(1));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = getAccountMessages(1);
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(1, messages.get(0).getMessage_id());
+
+        Map<String, Object> metrics = getMetrics();
+        Assert.assertEquals(3, metrics.get("timelineCache.hits"));
+        Assert.assertEquals(1, metrics.get("timelineCache.misses"));
+        Assert.assertEquals(1, metrics.get("timelineCache.accounts"));
+    }
+}
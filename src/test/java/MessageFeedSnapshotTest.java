@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageFeedSnapshotTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with GET /messages served from the in-memory
+     * snapshot, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.feed.mode", "snapshot");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.feed.mode");
+        System.clearProperty("messages.streaming");
+    }
+
+    private void postMessages(int count) throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                            "\"message_text\": \"message " + i + "\", \"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Creating, updating and deleting messages through the API while GET localhost:8080/messages reads the snapshot
+     *
+     * Expected Response:
+     *  Every write is visible in the next GET, in message_id order
+     */
+    @Test
+    public void snapshotFollowsWrites() throws IOException, InterruptedException {
+        postMessages(100);
+        List<Message> messages = getAllMessages();
+        Assert.assertEquals(101, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Assert.assertEquals(i + 1, messages.get(i).getMessage_id());
+        }
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/70"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        messages = getAllMessages();
+        Assert.assertEquals(100, messages.size());
+        Assert.assertEquals(2, messages.get(0).getMessage_id());
+        Assert.assertEquals(new Message(70, 1, "updated message", 1669947792), messages.get(68));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with streaming off, so the whole snapshot is handed to Jackson as a list,
+     * after enough posts to split it into several chunks and a delete
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message but the deleted one, in message_id order
+     */
+    @Test
+    public void bufferedListReadsEveryChunk() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("messages.streaming", "false");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+
+        postMessages(299);
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/150"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        List<Message> messages = getAllMessages();
+        Assert.assertEquals(299, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Assert.assertEquals(i < 149 ? i + 1 : i + 2, messages.get(i).getMessage_id());
+        }
+    }
+}
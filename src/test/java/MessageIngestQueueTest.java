@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageIngestQueueTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    List<Connection> heldConnections = new ArrayList<>();
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with the ingest queue enabled, holding one
+     * message and committing one message per group, and create a new webClient and ObjectMapper for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.ingest.mode", "queue");
+        System.setProperty("messages.ingest.queueCapacity", "1");
+        System.setProperty("messages.ingest.maxBatchSize", "1");
+        System.setProperty("messages.ingest.enqueueTimeoutMillis", "200");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        releaseConnections();
+        app.stop();
+        System.clearProperty("messages.ingest.mode");
+        System.clearProperty("messages.ingest.queueCapacity");
+        System.clearProperty("messages.ingest.maxBatchSize");
+        System.clearProperty("messages.ingest.enqueueTimeoutMillis");
+        System.clearProperty("db.executor.threads");
+    }
+
+    /**
+     * Borrows every pooled connection still available, so the ingest writer cannot commit until they are released.
+     * The pool is shared by every test in this JVM, and a connection another test never released stays borrowed.
+     */
+    private void holdAllConnections() throws SQLException {
+        int available = ConnectionUtil.getPool().getMaxSize() - ConnectionUtil.getPool().getActiveCount();
+        for (int i = 0; i < available; i++) {
+            heldConnections.add(ConnectionUtil.getConnection());
+        }
+    }
+
+    private void releaseConnections() {
+        for (Connection connection : heldConnections) {
+            ConnectionUtil.releaseConnection(connection);
+        }
+        heldConnections.clear();
+    }
+
+    private Map<String, Object> getMetrics() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+
+    private void awaitMetric(String name, int value) throws IOException, InterruptedException {
+        while (!Integer.valueOf(value).equals(getMetrics().get(name))) {
+            Thread.sleep(10);
+        }
+    }
+
+    private HttpRequest postMessage(String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text
+                        + "\",\"time_posted_epoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    private boolean messageIsCommitted(int message_id) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement("SELECT message_id FROM message WHERE message_id = ?");
+            ps.setInt(1, message_id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Sending POST localhost:8080/messages in queue mode while the writer cannot get a connection to commit
+     *
+     * Expected Response:
+     *  No response until the writer can commit; then Status Code 200 with the message_id of a committed row
+     */
+    @Test(timeout = 20000)
+    public void postIsAnsweredAfterCommit() throws Exception {
+        holdAllConnections();
+        CompletableFuture<HttpResponse<String>> response = webClient.sendAsync(postMessage("queued message"),
+                HttpResponse.BodyHandlers.ofString());
+        // the writer has taken the message and is waiting for a connection
+        awaitMetric("pool.waiting", 1);
+        Thread.sleep(300);
+        Assert.assertFalse(response.isDone());
+
+        releaseConnections();
+        Assert.assertEquals(200, response.join().statusCode());
+        Message saved = objectMapper.readValue(response.join().body(), Message.class);
+        Assert.assertEquals(new Message(2, 1, "queued message", 1669947793L), saved);
+        Assert.assertTrue(messageIsCommitted(saved.getMessage_id()));
+    }
+
+    /**
+     * Sending a third POST localhost:8080/messages while the writer holds one message and the queue of one holds another
+     *
+     * Expected Response:
+     *  The third post is answered 503 once the enqueue timeout passes; the first two are saved once the writer can
+     *  commit
+     */
+    @Test(timeout = 20000)
+    public void fullQueueAnswersServiceUnavailable() throws Exception {
+        holdAllConnections();
+        CompletableFuture<HttpResponse<String>> first = webClient.sendAsync(postMessage("first"),
+                HttpResponse.BodyHandlers.ofString());
+        awaitMetric("pool.waiting", 1);
+        CompletableFuture<HttpResponse<String>> second = webClient.sendAsync(postMessage("second"),
+                HttpResponse.BodyHandlers.ofString());
+        awaitMetric("ingestQueue.depth", 1);
+
+        HttpResponse<String> third = webClient.send(postMessage("third"), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, third.statusCode());
+
+        releaseConnections();
+        Assert.assertEquals(200, first.join().statusCode());
+        Assert.assertEquals(200, second.join().statusCode());
+        Assert.assertFalse(messageIsCommitted(4));
+    }
+
+    /**
+     * Sending 20 POST localhost:8080/messages in queue mode with 2 database workers, a queue of 100 and groups of up
+     * to 50, while the writer cannot get a connection to commit
+     *
+     * Expected Response:
+     *  All 20 posts are queued without waiting for a worker; once the writer can commit they are answered 200 and
+     *  committed in a group larger than the number of workers
+     */
+    @Test(timeout = 20000)
+    public void groupsAreNotLimitedByDatabaseWorkers() throws Exception {
+        app.stop();
+        System.setProperty("db.executor.threads", "2");
+        System.setProperty("messages.ingest.queueCapacity", "100");
+        System.setProperty("messages.ingest.maxBatchSize", "50");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+
+        holdAllConnections();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        responses.add(webClient.sendAsync(postMessage("first"), HttpResponse.BodyHandlers.ofString()));
+        awaitMetric("pool.waiting", 1);
+        for (int i = 0; i < 20; i++) {
+            responses.add(webClient.sendAsync(postMessage("queued " + i), HttpResponse.BodyHandlers.ofString()));
+        }
+        awaitMetric("ingestQueue.depth", 20);
+
+        releaseConnections();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(200, response.join().statusCode());
+        }
+        Assert.assertEquals(20, getMetrics().get("ingestQueue.largestGroup"));
+        Assert.assertTrue(messageIsCommitted(22));
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Four more messages are posted so there are five in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 5; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947792 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2 and following the X-Next-Cursor header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of 2, 2 and 1 messages in message_id order, with no cursor on the last page
+     */
+    @Test
+    public void getAllMessagesPaginated() throws IOException, InterruptedException {
+        List<Message> allMessages = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            String uri = "http://localhost:8080/messages?limit=2" + (cursor == null ? "" : "&after=" + cursor);
+            HttpResponse<String> response = webClient.send(HttpRequest.newBuilder().uri(URI.create(uri)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            allMessages.addAll(page);
+            pageSizes.add(page.size());
+            cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+        } while (cursor != null);
+
+        Assert.assertEquals(List.of(2, 2, 1), pageSizes);
+        Assert.assertEquals(5, allMessages.size());
+        for (int i = 0; i < allMessages.size(); i++) {
+            Assert.assertEquals(i + 1, allMessages.get(i).getMessage_id());
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=3
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the three newest messages of the account, newest first, and a cursor to the rest
+     */
+    @Test
+    public void getAllMessagesFromUserPaginated() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=3")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> firstPage = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(5, 4, 3), List.of(firstPage.get(0).getMessage_id(),
+                firstPage.get(1).getMessage_id(), firstPage.get(2).getMessage_id()));
+
+        String cursor = response.headers().firstValue("X-Next-Cursor").orElseThrow();
+        response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=3&after=" + cursor)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        List<Message> secondPage = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, secondPage.size());
+        Assert.assertEquals(2, secondPage.get(0).getMessage_id());
+        Assert.assertEquals(1, secondPage.get(1).getMessage_id());
+        Assert.assertTrue(response.headers().firstValue("X-Next-Cursor").isEmpty());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with an invalid cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getAllMessagesInvalidCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?after=not-a-cursor")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+import io.javalin.Javalin;
+
+public class PasswordHashingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    /**
+     * The suite's own work factor, put back after a test raises it.
+     */
+    String iterations = System.getProperty("accounts.password.iterations");
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        if (iterations == null) {
+            System.clearProperty("accounts.password.iterations");
+        } else {
+            System.setProperty("accounts.password.iterations", iterations);
+        }
+    }
+
+    private HttpResponse<String> post(String path, String username, String password)
+            throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String storedPassword(String username) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement("SELECT password FROM account WHERE username = ?");
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Registering with POST localhost:8080/register and logging in with the right and a wrong password
+     *
+     * Expected Response:
+     *  The stored password is a PBKDF2 hash, the right password logs in and the wrong one gets 401
+     */
+    @Test
+    public void registeredPasswordIsHashed() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals(200, post("/register", "user", "secret").statusCode());
+        Assert.assertTrue(storedPassword("user").startsWith("pbkdf2$"));
+
+        HttpResponse<String> login = post("/login", "user", "secret");
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret"), objectMapper.readValue(login.body(), Account.class));
+        Assert.assertEquals(401, post("/login", "user", "wrong").statusCode());
+    }
+
+    /**
+     * Logging in twice as the seeded account, whose password is stored as legacy plaintext
+     *
+     * Expected Response:
+     *  Both logins succeed, the first replaces the plaintext with a hash and a wrong password still gets 401
+     */
+    @Test
+    public void legacyPasswordIsRehashedOnLogin() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals("password", storedPassword("testuser1"));
+
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertTrue(storedPassword("testuser1").startsWith("pbkdf2$"));
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertEquals(401, post("/login", "testuser1", "wrong").statusCode());
+    }
+
+    /**
+     * Logging in with POST localhost:8080/login as a username that does not exist, with a work factor large enough
+     * to time
+     *
+     * Expected Response:
+     *  The login gets 401 only after about as long as verifying a wrong password takes
+     */
+    @Test
+    public void unknownUsernameTakesAsLongAsWrongPassword() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("accounts.password.iterations", "300000");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+
+        PasswordHasher hasher = AccountService.getPasswordHasher();
+        String stored = hasher.hash("secret");
+        long verifyNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            hasher.verify("wrong", stored);
+            verifyNanos = Math.min(verifyNanos, System.nanoTime() - start);
+        }
+
+        long start = System.nanoTime();
+        Assert.assertEquals(401, post("/login", "nobody", "wrong").statusCode());
+        Assert.assertTrue(System.nanoTime() - start >= verifyNanos / 2);
+    }
+}
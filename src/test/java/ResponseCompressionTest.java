@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nixxcode.jvmbrotli.common.BrotliLoader;
+import com.nixxcode.jvmbrotli.dec.BrotliInputStream;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ResponseCompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. 50 more messages are posted so the message list is above the compression
+     * threshold.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"compressible message ")
+                    .append(i).append("\",\"time_posted_epoch\":").append(1669947793L + i).append("}");
+        }
+        batch.append("]");
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<InputStream> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept-Encoding", acceptEncoding)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Encoding: gzip, and the body decompresses to all 51 messages
+     */
+    @Test
+    public void messageListIsGzipped() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = get("/messages", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        List<Message> messages = objectMapper.readValue(new GZIPInputStream(response.body()),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(51, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: br, gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Encoding: br, and the body decompresses to all 51 messages
+     */
+    @Test
+    public void brotliIsPreferred() throws IOException, InterruptedException {
+        Assume.assumeTrue("native brotli library not available", BrotliLoader.isBrotliAvailable());
+        HttpResponse<InputStream> response = get("/messages", "br, gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("br", response.headers().firstValue("Content-Encoding").orElse(null));
+        List<Message> messages = objectMapper.readValue(new BrotliInputStream(response.body()),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(51, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with Accept-Encoding: br, gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  No Content-Encoding: a single message is below the compression threshold
+     */
+    @Test
+    public void smallResponseIsNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = get("/messages/1", "br, gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Message message = objectMapper.readValue(response.body(), Message.class);
+        Assert.assertEquals("test message 1", message.getMessage_text());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip, then with identity
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Vary: Accept-Encoding on both, and the same weak ETag for the gzipped and the plain body
+     */
+    @Test
+    public void encodingsShareWeakETag() throws IOException, InterruptedException {
+        HttpResponse<InputStream> gzipped = get("/messages", "gzip");
+        HttpResponse<InputStream> plain = get("/messages", "identity");
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        Assert.assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals("Accept-Encoding", gzipped.headers().firstValue("Vary").orElse(null));
+        Assert.assertEquals("Accept-Encoding", plain.headers().firstValue("Vary").orElse(null));
+        String etag = gzipped.headers().firstValue("ETag").orElseThrow();
+        Assert.assertTrue(etag.startsWith("W/\""));
+        Assert.assertEquals(etag, plain.headers().firstValue("ETag").orElseThrow());
+    }
+}
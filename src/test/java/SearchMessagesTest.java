@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private Message post(String text, long epoch) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", \"time_posted_epoch\": " + epoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void executeDirectly(String sql) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.prepareStatement(sql).executeUpdate();
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    private List<Message> searchMessages(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = search(query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search with single terms, several terms and a prefix
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages containing every term, newest time_posted_epoch first
+     */
+    @Test
+    public void searchMatchesEveryTermNewestFirst() throws IOException, InterruptedException {
+        Message older = post("Lemon tart recipe", 1669947800);
+        Message newer = post("lemonade and lemon cake", 1669947900);
+        post("apple pie", 1669948000);
+
+        Assert.assertEquals(List.of(newer, older), searchMessages("q=lemon"));
+        Assert.assertEquals(List.of(newer), searchMessages("q=LEMON%20cake"));
+        Assert.assertEquals(List.of(newer, older), searchMessages("q=lem*"));
+        Assert.assertEquals(List.of(newer), searchMessages("q=lem*&limit=1"));
+        Assert.assertEquals(List.of(), searchMessages("q=lemon%20apple"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search after PATCH and DELETE of a matching message
+     *
+     * Expected Response:
+     *  the updated text is found by its new words only, and the deleted message is no longer found
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assert.assertEquals(1, searchMessages("q=test%20message").size());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"rewritten text\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(), searchMessages("q=test"));
+        Assert.assertEquals(1, searchMessages("q=rewritten").size());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(), searchMessages("q=rewritten"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search with a limit after the newest match was deleted straight from the
+     * database
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: limit messages that still exist; the deleted one does not take a place
+     */
+    @Test
+    public void searchSkipsMessagesDeletedOutsideApi() throws IOException, InterruptedException, SQLException {
+        Message oldest = post("lemon one", 1669947800);
+        Message older = post("lemon two", 1669947900);
+        Message newest = post("lemon three", 1669948000);
+        executeDirectly("DELETE FROM message WHERE message_id = " + newest.getMessage_id());
+
+        Assert.assertEquals(List.of(older, oldest), searchMessages("q=lemon&limit=2"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search for a message inserted straight into the database, before and after
+     * the index is rebuilt
+     *
+     * Expected Response:
+     *  the message is found once the index has been rebuilt
+     */
+    @Test
+    public void searchSeesMessagesInsertedOutsideApiAfterRebuild() throws IOException, InterruptedException,
+            SQLException {
+        executeDirectly("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                + "VALUES (1, 'inserted elsewhere', 1669947800)");
+        // asked of the index directly, since a response would be cached under the unchanged list ETag
+        Assert.assertEquals(List.of(), MessageService.getSearchIndex().search("elsewhere", 10));
+
+        Assert.assertTrue(MessageService.getSearchIndex().rebuild());
+        Assert.assertEquals(List.of(new Message(2, 1, "inserted elsewhere", 1669947800L)),
+                searchMessages("q=elsewhere"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search without q, or with a q that has no words
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutTermsIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, search("").statusCode());
+        Assert.assertEquals(400, search("q=%20*").statusCode());
+    }
+}